@@ -33,4 +33,15 @@ class AnimationUtils {
     static int lerp(int startValue, int endValue, float fraction) {
         return startValue + Math.round(fraction * (endValue - startValue));
     }
+
+    /**
+     * 按ARGB每个通道插值两个颜色
+     */
+    static int lerpColor(int startColor, int endColor, float fraction) {
+        final int a = lerp(startColor >>> 24, endColor >>> 24, fraction);
+        final int r = lerp((startColor >> 16) & 0xff, (endColor >> 16) & 0xff, fraction);
+        final int g = lerp((startColor >> 8) & 0xff, (endColor >> 8) & 0xff, fraction);
+        final int b = lerp(startColor & 0xff, endColor & 0xff, fraction);
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
 }
@@ -20,7 +20,7 @@ import android.graphics.drawable.Drawable;
  class DividerDrawable extends Drawable{
 
     private Paint paint;
-    private RectF rectF;
+    private final RectF rectF = new RectF();
     private int color = Color.BLACK;
 
     private int height =0;
@@ -52,7 +52,6 @@ import android.graphics.drawable.Drawable;
 
     @Override
     public void draw(Canvas canvas) {
-        canvas.drawColor(Color.TRANSPARENT);
         if(height==0 || height>=rectF.bottom) {
             canvas.drawRect(rectF, paint);
         }else{
@@ -75,7 +74,8 @@ import android.graphics.drawable.Drawable;
     public void setBounds(int left, int top, int right, int bottom)
     {
         super.setBounds(left, top, right, bottom);
-        rectF = new RectF(left, top, right, bottom);
+        //每个分割线都会设置一次，不要创建对象
+        rectF.set(left, top, right, bottom);
     }
 
 
@@ -0,0 +1,61 @@
+package com.ashlikun.xtablayout;
+
+import android.graphics.Canvas;
+import android.graphics.LinearGradient;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Shader;
+
+/**
+ * @author　　: 李坤
+ * 创建时间: 2026/10/17 14:25
+ * 邮箱　　：496546144@qq.com
+ * <p>
+ * 功能介绍：从左到右渐变色的指示器
+ * 渐变只创建一次，位置或宽度变了才改变换矩阵
+ */
+public class GradientIndicatorRenderer implements IndicatorRenderer {
+    private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Matrix mMatrix = new Matrix();
+    private final RectF mRect = new RectF();
+    private final float mRadius;
+    /**
+     * 上次设置变换矩阵时的位置和宽度，没变就不再设置，设置矩阵会重建底层的渐变
+     */
+    private int mLastLeft;
+    private int mLastWidth = -1;
+
+    public GradientIndicatorRenderer(int startColor, int endColor) {
+        this(startColor, endColor, 0);
+    }
+
+    /**
+     * @param radius 圆角大小，小于0的时候是高度的一半
+     */
+    public GradientIndicatorRenderer(int startColor, int endColor, float radius) {
+        mRadius = radius;
+        // 0-1的渐变，画的时候缩放到指示器的宽度
+        mPaint.setShader(new LinearGradient(0, 0, 1, 0, startColor, endColor, Shader.TileMode.CLAMP));
+    }
+
+    @Override
+    public void draw(Canvas canvas, Rect bounds, int startLeft, int startRight,
+                     int endLeft, int endRight, float progress, Paint paint) {
+        if (bounds.left != mLastLeft || bounds.width() != mLastWidth) {
+            mLastLeft = bounds.left;
+            mLastWidth = bounds.width();
+            mMatrix.setScale(mLastWidth, 1);
+            mMatrix.postTranslate(mLastLeft, 0);
+            mPaint.getShader().setLocalMatrix(mMatrix);
+        }
+        if (mRadius == 0) {
+            canvas.drawRect(bounds, mPaint);
+        } else {
+            mRect.set(bounds.left, bounds.top, bounds.right, bounds.bottom);
+            final float radius = mRadius < 0 ? bounds.height() / 2f : mRadius;
+            canvas.drawRoundRect(mRect, radius, radius, mPaint);
+        }
+    }
+}
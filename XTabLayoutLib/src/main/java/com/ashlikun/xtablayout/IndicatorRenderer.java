@@ -0,0 +1,30 @@
+package com.ashlikun.xtablayout;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+/**
+ * @author　　: 李坤
+ * 创建时间: 2026/10/17 14:05
+ * 邮箱　　：496546144@qq.com
+ * <p>
+ * 功能介绍：指示器的绘制，可以自定义指示器的样式
+ * 每帧都会调用，需要的对象（Path，Shader等）要提前创建好，不要在draw里创建
+ */
+public interface IndicatorRenderer {
+    /**
+     * 画指示器
+     *
+     * @param canvas     画布
+     * @param bounds     现在指示器的区域（已经按指示器宽度居中），不要修改
+     * @param startLeft  这次移动开始时的左边
+     * @param startRight 这次移动开始时的右边
+     * @param endLeft    这次移动结束时的左边
+     * @param endRight   这次移动结束时的右边
+     * @param progress   移动的进度0-1，没有移动的时候是0，开始和结束是一样的
+     * @param paint      指示器的画笔，颜色已经设置好
+     */
+    void draw(Canvas canvas, Rect bounds, int startLeft, int startRight,
+              int endLeft, int endRight, float progress, Paint paint);
+}
@@ -0,0 +1,21 @@
+package com.ashlikun.xtablayout;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+/**
+ * @author　　: 李坤
+ * 创建时间: 2026/10/17 14:10
+ * 邮箱　　：496546144@qq.com
+ * <p>
+ * 功能介绍：直线指示器，和默认的一样
+ */
+public class LineIndicatorRenderer implements IndicatorRenderer {
+
+    @Override
+    public void draw(Canvas canvas, Rect bounds, int startLeft, int startRight,
+                     int endLeft, int endRight, float progress, Paint paint) {
+        canvas.drawRect(bounds, paint);
+    }
+}
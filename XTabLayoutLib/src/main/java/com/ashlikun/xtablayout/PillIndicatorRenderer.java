@@ -0,0 +1,45 @@
+package com.ashlikun.xtablayout;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * @author　　: 李坤
+ * 创建时间: 2026/10/17 14:15
+ * 邮箱　　：496546144@qq.com
+ * <p>
+ * 功能介绍：圆角指示器
+ */
+public class PillIndicatorRenderer implements IndicatorRenderer {
+    /**
+     * 自己的抗锯齿画笔，不去改strip共用的画笔，颜色每次从共用的画笔复制
+     */
+    private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final RectF mRect = new RectF();
+    private final float mRadius;
+
+    /**
+     * 两头是半圆
+     */
+    public PillIndicatorRenderer() {
+        this(-1);
+    }
+
+    /**
+     * @param radius 圆角大小，小于0的时候是高度的一半
+     */
+    public PillIndicatorRenderer(float radius) {
+        mRadius = radius;
+    }
+
+    @Override
+    public void draw(Canvas canvas, Rect bounds, int startLeft, int startRight,
+                     int endLeft, int endRight, float progress, Paint paint) {
+        mRect.set(bounds.left, bounds.top, bounds.right, bounds.bottom);
+        final float radius = mRadius < 0 ? bounds.height() / 2f : mRadius;
+        mPaint.setColor(paint.getColor());
+        canvas.drawRoundRect(mRect, radius, radius, mPaint);
+    }
+}
@@ -0,0 +1,54 @@
+package com.ashlikun.xtablayout;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * @author　　: 李坤
+ * 创建时间: 2026/10/17 14:20
+ * 邮箱　　：496546144@qq.com
+ * <p>
+ * 功能介绍：拉伸指示器，移动时前面的一边先到，后面的一边再跟上，中间会被拉长
+ */
+public class StretchIndicatorRenderer implements IndicatorRenderer {
+    /**
+     * 自己的抗锯齿画笔，不去改strip共用的画笔，颜色每次从共用的画笔复制
+     */
+    private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final RectF mRect = new RectF();
+    private final float mRadius;
+
+    public StretchIndicatorRenderer() {
+        this(-1);
+    }
+
+    /**
+     * @param radius 圆角大小，小于0的时候是高度的一半
+     */
+    public StretchIndicatorRenderer(float radius) {
+        mRadius = radius;
+    }
+
+    @Override
+    public void draw(Canvas canvas, Rect bounds, int startLeft, int startRight,
+                     int endLeft, int endRight, float progress, Paint paint) {
+        // 前一半时间前面的边移过去，后一半时间后面的边跟上
+        final float lead = Math.min(1f, progress * 2f);
+        final float follow = Math.max(0f, progress * 2f - 1f);
+        final float left;
+        final float right;
+        if (endLeft >= startLeft) {
+            left = AnimationUtils.lerp(startLeft, endLeft, follow);
+            right = AnimationUtils.lerp(startRight, endRight, lead);
+        } else {
+            left = AnimationUtils.lerp(startLeft, endLeft, lead);
+            right = AnimationUtils.lerp(startRight, endRight, follow);
+        }
+        mRect.set(left, bounds.top, right, bounds.bottom);
+        final float radius = mRadius < 0 ? bounds.height() / 2f : mRadius;
+        mPaint.setColor(paint.getColor());
+        canvas.drawRoundRect(mRect, radius, radius, mPaint);
+    }
+}
@@ -0,0 +1,113 @@
+package com.ashlikun.xtablayout;
+
+import java.util.ArrayList;
+
+/**
+ * @author　　: 李坤
+ * 创建时间: 2026/10/17 10:20
+ * 邮箱　　：496546144@qq.com
+ * <p>
+ * 功能介绍：tab View的回收池
+ * 多个XTabLayout可以共用一个（样式要一样），并统计命中情况方便调整池子大小
+ */
+public class TabViewPool {
+    private static final int DEFAULT_MAX_SIZE = 12;
+
+    private final ArrayList<XTabLayout.TabView> mScrap = new ArrayList<>();
+    private int mMaxSize;
+
+    private int mAcquireCount;
+    private int mHitCount;
+    private int mMissCount;
+
+    public TabViewPool() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public TabViewPool(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("The max pool size must be > 0");
+        }
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * 设置池子最多放几个，多出来的直接丢掉
+     */
+    public void setMaxSize(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("The max pool size must be > 0");
+        }
+        mMaxSize = maxSize;
+        while (mScrap.size() > maxSize) {
+            mScrap.remove(mScrap.size() - 1);
+        }
+    }
+
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * 池子里现在有几个
+     */
+    public int size() {
+        return mScrap.size();
+    }
+
+    public void clear() {
+        mScrap.clear();
+    }
+
+    XTabLayout.TabView acquire() {
+        mAcquireCount++;
+        final int size = mScrap.size();
+        if (size > 0) {
+            mHitCount++;
+            return mScrap.remove(size - 1);
+        }
+        mMissCount++;
+        return null;
+    }
+
+    /**
+     * @return false：池子满了没放进去
+     */
+    boolean release(XTabLayout.TabView view) {
+        if (mScrap.contains(view)) {
+            throw new IllegalStateException("Already in the pool!");
+        }
+        if (mScrap.size() < mMaxSize) {
+            mScrap.add(view);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 一共拿了几次
+     */
+    public int getAcquireCount() {
+        return mAcquireCount;
+    }
+
+    /**
+     * 从池子里拿到的次数
+     */
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * 池子是空的，需要新建的次数
+     */
+    public int getMissCount() {
+        return mMissCount;
+    }
+
+    public void resetStats() {
+        mAcquireCount = 0;
+        mHitCount = 0;
+        mMissCount = 0;
+    }
+}
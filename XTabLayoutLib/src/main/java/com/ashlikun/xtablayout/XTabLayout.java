@@ -1,21 +1,24 @@
 package com.ashlikun.xtablayout;
 
-import android.animation.Animator;
-import android.animation.AnimatorListenerAdapter;
-import android.animation.ValueAnimator;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.res.ColorStateList;
+import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.database.DataSetObserver;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.ColorFilter;
 import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
 import android.graphics.Rect;
 import android.graphics.Typeface;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.support.annotation.ColorInt;
 import android.support.annotation.DrawableRes;
 import android.support.annotation.IntDef;
@@ -23,24 +26,34 @@ import android.support.annotation.LayoutRes;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.StringRes;
+import android.support.annotation.VisibleForTesting;
 import android.support.v4.util.Pools;
 import android.support.v4.view.GravityCompat;
 import android.support.v4.view.PagerAdapter;
 import android.support.v4.view.ViewCompat;
 import android.support.v4.view.ViewPager;
+import android.support.v4.widget.ImageViewCompat;
 import android.support.v4.widget.TextViewCompat;
 import android.support.v7.app.ActionBar;
 import android.support.v7.content.res.AppCompatResources;
+import android.support.v7.widget.AppCompatImageView;
+import android.support.v7.widget.AppCompatTextView;
+import android.text.BoringLayout;
 import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
 import android.text.TextUtils;
 import android.util.AttributeSet;
+import android.util.DisplayMetrics;
 import android.util.TypedValue;
+import android.view.Choreographer;
 import android.view.Gravity;
 import android.view.LayoutInflater;
+import android.view.MotionEvent;
+import android.view.SoundEffectConstants;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewParent;
-import android.view.WindowManager;
 import android.view.accessibility.AccessibilityEvent;
 import android.view.accessibility.AccessibilityNodeInfo;
 import android.widget.HorizontalScrollView;
@@ -53,9 +66,10 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.Locale;
 
-import static android.R.attr.maxWidth;
 import static android.support.v4.view.ViewPager.SCROLL_STATE_DRAGGING;
 import static android.support.v4.view.ViewPager.SCROLL_STATE_IDLE;
 import static android.support.v4.view.ViewPager.SCROLL_STATE_SETTLING;
@@ -72,6 +86,8 @@ public class XTabLayout extends HorizontalScrollView {
 
     private static final int DEFAULT_HEIGHT_WITH_TEXT_ICON = 72;
     private static final int DEFAULT_GAP_TEXT_ICON = 5;
+    private static final int DEFAULT_ICON_SIZE = 24;
+    private static final int DEFAULT_MAX_LINES = 2;
     private static final int INVALID_WIDTH = -1;
     private static final int DEFAULT_HEIGHT = 48;
     private static final int TAB_MIN_WIDTH_MARGIN = 56;
@@ -79,6 +95,10 @@ public class XTabLayout extends HorizontalScrollView {
     private static final int MOTION_NON_ADJACENT_OFFSET = 24;
 
     private static final int ANIMATION_DURATION = 300;
+    /**
+     * 滑动时颜色渐变分成多少级，每级的颜色提前创建好，滑动的时候不再创建对象
+     */
+    private static final int SWIPE_COLOR_STEPS = 32;
 
     private static final Pools.Pool<Tab> sTabPool = new Pools.SynchronizedPool<>(16);
     /**
@@ -187,10 +207,37 @@ public class XTabLayout extends HorizontalScrollView {
 
     private int mTabTextAppearance;
     private ColorStateList mTabTextColors;
+    /**
+     * 文字外观里的颜色，构造的时候解析一次，外观只在创建文字View的时候设置一次
+     * 大小，颜色，大小写每次更新由tab自己的属性决定
+     */
+    private ColorStateList mTabAppearanceTextColors;
     private float mTabTextSize = 0;
     private boolean xTabTextBold;
     private float mTabSelectedTextSize = 0;
     private boolean xTabTextSelectedBold;
+    /**
+     * 选中的文字大小用缩放实现，加粗用画笔实现，不用重新布局
+     */
+    private boolean xTabTextSelectedScale;
+    /**
+     * 缩放模式下正在跟着滑动渐变的tab，右边一个是+1
+     */
+    private int mSwipeScalePosition = Tab.INVALID_POSITION;
+    /**
+     * 图标的着色
+     */
+    private ColorStateList mTabIconTint;
+    /**
+     * 滑动时从没选中到选中每一级的文字颜色和图标着色，颜色变了再重新创建
+     */
+    private ColorStateList[] mSwipeTextColorSteps;
+    private ColorFilter[] mSwipeIconFilterSteps;
+    private boolean mSwipeColorsDirty = true;
+    /**
+     * 正在跟着滑动渐变颜色的tab，右边一个是+1
+     */
+    private int mSwipeColorPosition = Tab.INVALID_POSITION;
     private float mTabTextMultiLineSize;
 
     private Drawable xTabItemBackground = null;
@@ -201,6 +248,15 @@ public class XTabLayout extends HorizontalScrollView {
     private final int mRequestedTabMaxWidth;
     private int xTabDisplayNum;
     private final int mScrollableTabMinWidth;
+    /**
+     * 屏幕密度和宽度，只在配置改变的时候更新，测量的时候不用每次去取
+     */
+    private float mDensity;
+    private int mDisplayWidth;
+    /**
+     * 测量时自己的宽度（去掉内边距），一屏显示几个按这个算
+     */
+    private int mLayoutWidth;
 
     private int mContentInsetStart;
 
@@ -211,17 +267,55 @@ public class XTabLayout extends HorizontalScrollView {
     private int dividerHeight;
     private int dividerColor;
     private int dividerGravity;
+    /**
+     * 分割线，样式修改的时候复用
+     */
+    private DividerDrawable mDividerDrawable;
+    /**
+     * 批量修改期间的样式修改，提交的时候统一更新
+     */
+    private static final int STYLE_DIVIDER = 1;
+    private static final int STYLE_TAB_BACKGROUND = 1 << 1;
+    private static final int STYLE_TABS = 1 << 2;
+    private int mPendingStyleChanges;
     /**
      * 图标与文字距离
      */
     private int iconAndTextSpace;
+    /**
+     * 是否只保留可见的tab View，滑出屏幕的回收复用（只在MODE_SCROLLABLE时有效）
+     */
+    private boolean xTabRecycle;
+    /**
+     * 不创建tab View，由SlidingTabStrip直接画文字（只在MODE_SCROLLABLE时有效）
+     */
+    private boolean xTabCanvasMode;
+    /**
+     * 当前显示为选中状态的tab，滑动时会跟着变，和mSelectedTab不一定一样
+     */
+    private Tab mSelectedViewTab;
+    /**
+     * 批量修改的嵌套层数
+     */
+    private int mBatchDepth;
+    /**
+     * 批量修改时从这个位置开始tab还没有重新编号，前面的位置都是对的
+     */
+    private int mBatchDirtyPosition = Integer.MAX_VALUE;
+    /**
+     * 批量修改时要选中的tab，提交的时候再选中
+     */
+    private Tab mBatchSelectedTab;
 
 
     private OnTabSelectedListener mSelectedListener;
     private final ArrayList<OnTabSelectedListener> mSelectedListeners = new ArrayList<>();
     private OnTabSelectedListener mCurrentVpSelectedListener;
 
-    private ValueAnimator mScrollAnimator;
+    /**
+     * 滚动和指示器共用的动画
+     */
+    private final TabAnimator mTabAnimator = new TabAnimator();
 
     private ViewPager mViewPager;
     private PagerAdapter mPagerAdapter;
@@ -230,11 +324,20 @@ public class XTabLayout extends HorizontalScrollView {
     private AdapterChangeListener mAdapterChangeListener;
     //是否布局完成
     private boolean onLayoutOk = false;
+    /**
+     * 图标和文字都有的tab数量，决定默认高度
+     */
+    private int mIconAndTextTabCount;
+    /**
+     * 布局完成之前设置的位置，第一次onLayout的时候选中，后设置的覆盖前面的
+     */
+    private int mPendingSelectPosition = Tab.INVALID_POSITION;
+    private boolean mPendingSelectNotify;
 
     /**
-     * 我们使用池作为一个简单的回收桶
+     * 我们使用池作为一个简单的回收桶，可以和别的XTabLayout共用
      */
-    private final Pools.Pool<TabView> mTabViewPool = new Pools.SimplePool<>(12);
+    private TabViewPool mTabViewPool = new TabViewPool();
 
     public XTabLayout(Context context) {
         this(context, null);
@@ -248,6 +351,7 @@ public class XTabLayout extends HorizontalScrollView {
         super(context, attrs, defStyleAttr);
 
         ThemeUtils.checkAppCompatTheme(context);
+        updateDisplayMetrics();
 
         //禁用滚动条
         setHorizontalScrollBarEnabled(false);
@@ -267,6 +371,7 @@ public class XTabLayout extends HorizontalScrollView {
         mTabStrip.setSelectedIndicatorColor(a.getColor(R.styleable.XTabLayout_xTabIndicatorColor, 0));
         mTabStrip.setSelectedIndicatorDrawable(a.getDrawable(R.styleable.XTabLayout_xTabIndicatorDrawable));
         mTabStrip.setWidthText(a.getBoolean(R.styleable.XTabLayout_xTabIndicatorWidthWidthText, false));
+        mTabStrip.setIndicatorLayer(a.getBoolean(R.styleable.XTabLayout_xTabIndicatorLayer, false));
 
         mTabPaddingStart = mTabPaddingTop = mTabPaddingEnd = mTabPaddingBottom = a
                 .getDimensionPixelSize(R.styleable.XTabLayout_xTabPadding, 0);
@@ -281,6 +386,7 @@ public class XTabLayout extends HorizontalScrollView {
 
 
         xTabTextAllCaps = a.getBoolean(R.styleable.XTabLayout_xTabTextAllCaps, false);
+        mTabIconTint = a.getColorStateList(R.styleable.XTabLayout_xTabIconTint);
 
         mTabTextAppearance = a.getResourceId(R.styleable.XTabLayout_xTabTextAppearance,
                 R.style.TextAppearance_Design_Tab);
@@ -288,6 +394,7 @@ public class XTabLayout extends HorizontalScrollView {
         xTabTextBold = a.getBoolean(R.styleable.XTabLayout_xTabTextBold, false);
 
         xTabTextSelectedBold = a.getBoolean(R.styleable.XTabLayout_xTabTextSelectedBold, false);
+        xTabTextSelectedScale = a.getBoolean(R.styleable.XTabLayout_xTabTextSelectedScale, false);
 
         // Text colors/sizes come from the text appearance first
         final TypedArray ta = context.obtainStyledAttributes(mTabTextAppearance,
@@ -297,6 +404,7 @@ public class XTabLayout extends HorizontalScrollView {
                 mTabTextSize = ta.getDimensionPixelSize(R.styleable.TextAppearance_android_textSize, 0);
             }
             mTabTextColors = ta.getColorStateList(R.styleable.TextAppearance_android_textColor);
+            mTabAppearanceTextColors = mTabTextColors;
         } finally {
             ta.recycle();
         }
@@ -341,6 +449,8 @@ public class XTabLayout extends HorizontalScrollView {
         dividerGravity = a.getInteger(R.styleable.XTabLayout_xTabDividerGravity, DividerDrawable.CENTER);
 
         iconAndTextSpace = a.getDimensionPixelSize(R.styleable.XTabLayout_xTabIconAndTextSpace, dpToPx(DEFAULT_GAP_TEXT_ICON));
+        xTabRecycle = a.getBoolean(R.styleable.XTabLayout_xTabRecycle, false);
+        xTabCanvasMode = a.getBoolean(R.styleable.XTabLayout_xTabCanvasMode, false);
         a.recycle();
 
         final Resources res = getResources();
@@ -351,26 +461,69 @@ public class XTabLayout extends HorizontalScrollView {
         applyModeAndGravity(true);
 
         //添加分割线
-        addDivider();
+        updateDivider();
     }
 
     /**
-     * 添加分割线
+     * 样式变了，批量修改期间先记下来，否则马上更新
      */
-    private void addDivider() {
-        post(new Runnable() {
-            @Override
-            public void run() {
-                if (dividerWidth > 0) {
-                    mTabStrip.setShowDividers(LinearLayout.SHOW_DIVIDER_MIDDLE);
-                    DividerDrawable dividerDrawable = new DividerDrawable(getContext());
-                    dividerDrawable.setDividerSize(dividerWidth, dividerHeight);
-                    dividerDrawable.setColor(dividerColor);
-                    dividerDrawable.setGravity(dividerGravity);
-                    mTabStrip.setDividerDrawable(dividerDrawable);
-                }
+    private void onStyleChanged(int changes) {
+        if (mBatchDepth > 0) {
+            mPendingStyleChanges |= changes;
+            return;
+        }
+        applyStyleChanges(changes);
+    }
+
+    private void applyStyleChanges(int changes) {
+        if ((changes & STYLE_DIVIDER) != 0) {
+            updateDivider();
+        }
+        if ((changes & STYLE_TABS) != 0) {
+            // 颜色可能变了，滑动渐变的颜色重新算
+            mSwipeColorsDirty = true;
+            mSwipeColorPosition = Tab.INVALID_POSITION;
+            updateAllTabs();
+            mTabStrip.invalidateTabWidths();
+        }
+        if ((changes & STYLE_TAB_BACKGROUND) != 0) {
+            updateTabBackgrounds();
+        }
+    }
+
+    /**
+     * 更新分割线，一直复用同一个Drawable
+     */
+    private void updateDivider() {
+        if (dividerWidth <= 0) {
+            mTabStrip.setShowDividers(LinearLayout.SHOW_DIVIDER_NONE);
+        } else {
+            if (mDividerDrawable == null) {
+                mDividerDrawable = new DividerDrawable(getContext());
             }
-        });
+            final boolean widthChanged = mDividerDrawable.getIntrinsicWidth() != dividerWidth;
+            mDividerDrawable.setDividerSize(dividerWidth, dividerHeight);
+            mDividerDrawable.setColor(dividerColor);
+            mDividerDrawable.setGravity(dividerGravity);
+            mTabStrip.setShowDividers(LinearLayout.SHOW_DIVIDER_MIDDLE);
+            if (mTabStrip.getDividerDrawable() != mDividerDrawable) {
+                mTabStrip.setDividerDrawable(mDividerDrawable);
+            } else if (widthChanged) {
+                // 分割线的宽度算在tab的位置里
+                mTabStrip.invalidateTabWidths();
+                mTabStrip.requestLayout();
+            }
+        }
+        // LinearLayout没有分割线的时候会设置不绘制，指示器还要画
+        mTabStrip.setWillNotDraw(false);
+        mTabStrip.invalidate();
+    }
+
+    private void updateTabBackgrounds() {
+        for (int i = 0; i < mTabStrip.getChildCount(); i++) {
+            final View child = mTabStrip.getChildAt(i);
+            child.setBackground(child.isSelected() ? xTabItemSelectedBackground : xTabItemBackground);
+        }
     }
 
     /**
@@ -382,7 +535,7 @@ public class XTabLayout extends HorizontalScrollView {
     public void setDividerSize(int width, int height) {
         dividerWidth = width;
         dividerHeight = height;
-        addDivider();
+        onStyleChanged(STYLE_DIVIDER);
     }
 
     /**
@@ -392,7 +545,7 @@ public class XTabLayout extends HorizontalScrollView {
      */
     public void setDividerColor(int color) {
         dividerColor = color;
-        addDivider();
+        onStyleChanged(STYLE_DIVIDER);
     }
 
     /**
@@ -400,7 +553,7 @@ public class XTabLayout extends HorizontalScrollView {
      */
     public void setDividerGravity(int gravity) {
         dividerGravity = gravity;
-        addDivider();
+        onStyleChanged(STYLE_DIVIDER);
 
     }
 
@@ -412,14 +565,12 @@ public class XTabLayout extends HorizontalScrollView {
     public void setCurrentTabPosition(final int position, final boolean isNotifica) {
         if (position >= 0 && position < getTabCount()) {
             if (onLayoutOk) {
+                mPendingSelectPosition = Tab.INVALID_POSITION;
                 selectTab(getTabAt(position), true, isNotifica);
             } else {
-                postDelayed(new Runnable() {
-                    @Override
-                    public void run() {
-                        setCurrentTabPosition(position, isNotifica);
-                    }
-                }, 50);
+                // 还没布局，等第一次onLayout再选中
+                mPendingSelectPosition = position;
+                mPendingSelectNotify = isNotifica;
             }
 
         }
@@ -438,8 +589,21 @@ public class XTabLayout extends HorizontalScrollView {
      * 设置字母是否自动小写转大写
      */
     public void setAllCaps(boolean allCaps) {
-        xTabTextAllCaps = allCaps;
-//        invalidate();
+        if (xTabTextAllCaps != allCaps) {
+            xTabTextAllCaps = allCaps;
+            onStyleChanged(STYLE_TABS);
+        }
+    }
+
+    /**
+     * 设置文字大小和选中的文字大小，单位px
+     */
+    public void setTabTextSize(float textSize, float selectedTextSize) {
+        if (mTabTextSize != textSize || mTabSelectedTextSize != selectedTextSize) {
+            mTabTextSize = textSize;
+            mTabSelectedTextSize = selectedTextSize;
+            onStyleChanged(STYLE_TABS);
+        }
     }
 
     /**
@@ -461,10 +625,37 @@ public class XTabLayout extends HorizontalScrollView {
         mTabStrip.setSelectedIndicatorDrawable(drawable);
     }
 
+    /**
+     * 自定义指示器的样式，优先于指示器的Drawable，为null时恢复默认
+     * 自带{@link LineIndicatorRenderer}，{@link PillIndicatorRenderer}，
+     * {@link StretchIndicatorRenderer}，{@link GradientIndicatorRenderer}
+     */
+    public void setIndicatorRenderer(@Nullable IndicatorRenderer renderer) {
+        mTabStrip.setIndicatorRenderer(renderer);
+    }
+
+    public IndicatorRenderer getIndicatorRenderer() {
+        return mTabStrip.getIndicatorRenderer();
+    }
+
     public void setSelectedTabIndicatorDrawable(@DrawableRes int drawable) {
         mTabStrip.setSelectedIndicatorDrawable(getResources().getDrawable(drawable));
     }
 
+    /**
+     * 指示器用单独的View画在strip的浮层上，移动的时候只改translationX和scaleX，不重画
+     * 点击tab时用属性动画移动，Android 4.3以下不支持
+     *
+     * @attr ref R.styleable#xTabIndicatorLayer
+     */
+    public void setTabIndicatorLayer(boolean layer) {
+        mTabStrip.setIndicatorLayer(layer);
+    }
+
+    public boolean isTabIndicatorLayer() {
+        return mTabStrip.isIndicatorLayer();
+    }
+
     /**
      * Sets the tab indicator's height for the currently selected tab.
      *
@@ -479,6 +670,72 @@ public class XTabLayout extends HorizontalScrollView {
         this.xTabDisplayNum = xTabDisplayNum;
     }
 
+    /**
+     * 设置是否只保留可见的tab View，滑出屏幕的回收复用，适合tab特别多的情况
+     * 只在{@link #MODE_SCROLLABLE}时有效
+     *
+     * @attr ref R.styleable#xTabRecycle
+     */
+    public void setTabRecycle(boolean recycle) {
+        if (xTabRecycle != recycle) {
+            xTabRecycle = recycle;
+            applyModeAndGravity(true);
+        }
+    }
+
+    public boolean isTabRecycle() {
+        return xTabRecycle;
+    }
+
+    /**
+     * 设置是否不创建tab View，由SlidingTabStrip直接画每个tab的文字，适合只有文字的分类栏
+     * 只显示文字，图标，自定义View和item背景都不显示，只在{@link #MODE_SCROLLABLE}时有效
+     *
+     * @attr ref R.styleable#xTabCanvasMode
+     */
+    public void setTabCanvasMode(boolean canvasMode) {
+        if (xTabCanvasMode != canvasMode) {
+            xTabCanvasMode = canvasMode;
+            applyModeAndGravity(true);
+        }
+    }
+
+    public boolean isTabCanvasMode() {
+        return xTabCanvasMode;
+    }
+
+    /**
+     * 选中的文字大小用缩放实现，加粗用画笔实现
+     * 切换选中和滑动时只需要重绘，tab的宽度按大的字号算
+     */
+    public void setTabTextSelectedScale(boolean scale) {
+        if (xTabTextSelectedScale != scale) {
+            xTabTextSelectedScale = scale;
+            mSwipeScalePosition = Tab.INVALID_POSITION;
+            for (int i = 0; i < mTabStrip.getChildCount(); i++) {
+                final TabView child = (TabView) mTabStrip.getChildAt(i);
+                child.updateTextStyle(child.isSelected());
+            }
+            mTabStrip.invalidateTabWidths();
+            mTabStrip.requestLayout();
+        }
+    }
+
+    /**
+     * 设置tab View的回收池，多个样式一样的XTabLayout（比如列表里的）可以共用一个
+     */
+    public void setTabViewPool(@NonNull TabViewPool pool) {
+        mTabViewPool = pool;
+    }
+
+    public TabViewPool getTabViewPool() {
+        return mTabViewPool;
+    }
+
+    public boolean isTabTextSelectedScale() {
+        return xTabTextSelectedScale;
+    }
+
     /**
      * Set the scroll position of the tabs. This is useful for when the tabs are being displayed as
      * part of a scrolling container such as {@link ViewPager}.
@@ -496,7 +753,7 @@ public class XTabLayout extends HorizontalScrollView {
     public void setScrollPosition(int position, float positionOffset, boolean updateSelectedText,
                                   boolean updateIndicatorPosition) {
         final int roundedPosition = Math.round(position + positionOffset);
-        if (roundedPosition < 0 || roundedPosition >= mTabStrip.getChildCount()) {
+        if (roundedPosition < 0 || roundedPosition >= getTabCount()) {
             return;
         }
 
@@ -506,22 +763,186 @@ public class XTabLayout extends HorizontalScrollView {
         }
 
         // Now update the scroll position, canceling any running animation
-        if (mScrollAnimator != null && mScrollAnimator.isRunning()) {
-            mScrollAnimator.cancel();
-        }
+        mTabAnimator.cancelScroll();
         scrollTo(calculateScrollXForTab(position, positionOffset), 0);
 
         // Update the 'selected state' view as we scroll, if enabled
         if (updateSelectedText) {
             setSelectedTabView(roundedPosition);
+            updateSwipeTextScale(position, positionOffset);
+            updateSwipeColors(position, positionOffset);
+        }
+    }
+
+    /**
+     * 缩放模式下，滑动时两边tab的文字大小跟着渐变，只需要重绘
+     */
+    private void updateSwipeTextScale(int position, float positionOffset) {
+        if (mTabStrip.isCanvasMode()) {
+            // 直接画文字时大小和颜色都在画的时候渐变
+            mTabStrip.setLabelSwipe(position, positionOffset);
+            return;
+        }
+        if (!xTabTextSelectedScale || mTabTextSize == mTabSelectedTextSize) {
+            return;
+        }
+        if (mSwipeScalePosition != position) {
+            // 换了一对tab，上一对恢复成选中状态的大小
+            resetSwipeTextScale(mSwipeScalePosition);
+            resetSwipeTextScale(mSwipeScalePosition + 1);
+            mSwipeScalePosition = position;
+        }
+        setSwipeTextScale(position, 1f - positionOffset);
+        setSwipeTextScale(position + 1, positionOffset);
+    }
+
+    private void resetSwipeTextScale(int position) {
+        if (position >= 0 && position < getTabCount()) {
+            final TabView view = mTabs.get(position).mView;
+            if (view != null) {
+                view.setTextSelectedFraction(view.isSelected() ? 1f : 0f);
+            }
+        }
+    }
+
+    private void setSwipeTextScale(int position, float fraction) {
+        if (position >= 0 && position < getTabCount()) {
+            final TabView view = mTabs.get(position).mView;
+            if (view != null) {
+                view.setTextSelectedFraction(fraction);
+            }
+        }
+    }
+
+
+    /**
+     * 滑动时两边tab的文字颜色和图标着色跟着渐变，只改这两个tab
+     */
+    private void updateSwipeColors(int position, float positionOffset) {
+        if (mTabStrip.isCanvasMode() || !ensureSwipeColors()) {
+            return;
+        }
+        if (mSwipeColorPosition != position) {
+            // 换了一对tab，上一对恢复成按状态的颜色
+            resetSwipeColors(mSwipeColorPosition);
+            resetSwipeColors(mSwipeColorPosition + 1);
+            mSwipeColorPosition = position;
+        }
+        setSwipeColors(position, 1f - positionOffset);
+        setSwipeColors(position + 1, positionOffset);
+    }
+
+    private void resetSwipeColors(int position) {
+        if (position >= 0 && position < getTabCount()) {
+            final TabView view = mTabs.get(position).mView;
+            if (view != null) {
+                view.resetSwipeColors();
+            }
+        }
+    }
+
+    private void setSwipeColors(int position, float fraction) {
+        if (position >= 0 && position < getTabCount()) {
+            final TabView view = mTabs.get(position).mView;
+            if (view != null) {
+                final int step = Math.round(fraction * SWIPE_COLOR_STEPS);
+                view.setSwipeColors(mSwipeTextColorSteps != null ? mSwipeTextColorSteps[step] : null,
+                        mSwipeIconFilterSteps != null ? mSwipeIconFilterSteps[step] : null);
+            }
+        }
+    }
+
+    /**
+     * 颜色变了才重新创建每一级的颜色
+     *
+     * @return 是否有需要渐变的颜色
+     */
+    private boolean ensureSwipeColors() {
+        if (mSwipeColorsDirty) {
+            mSwipeColorsDirty = false;
+            final ColorStateList textColors = mTabTextColors != null
+                    ? mTabTextColors : mTabAppearanceTextColors;
+            mSwipeTextColorSteps = null;
+            if (hasSwipeColors(textColors)) {
+                mSwipeTextColorSteps = new ColorStateList[SWIPE_COLOR_STEPS + 1];
+                for (int i = 0; i <= SWIPE_COLOR_STEPS; i++) {
+                    mSwipeTextColorSteps[i] = ColorStateList.valueOf(getSwipeColor(textColors, i));
+                }
+            }
+            mSwipeIconFilterSteps = null;
+            if (hasSwipeColors(mTabIconTint)) {
+                mSwipeIconFilterSteps = new ColorFilter[SWIPE_COLOR_STEPS + 1];
+                for (int i = 0; i <= SWIPE_COLOR_STEPS; i++) {
+                    mSwipeIconFilterSteps[i] = new PorterDuffColorFilter(getSwipeColor(mTabIconTint, i),
+                            PorterDuff.Mode.SRC_IN);
+                }
+            }
         }
+        return mSwipeTextColorSteps != null || mSwipeIconFilterSteps != null;
+    }
+
+    /**
+     * 没选中和选中的颜色不一样才需要渐变
+     */
+    private static boolean hasSwipeColors(ColorStateList colors) {
+        return colors != null && colors.getDefaultColor()
+                != colors.getColorForState(SELECTED_STATE_SET, colors.getDefaultColor());
     }
 
+    /**
+     * 从没选中到选中分成{@link #SWIPE_COLOR_STEPS}级，第step级的颜色
+     */
+    private static int getSwipeColor(ColorStateList colors, int step) {
+        final int normalColor = colors.getDefaultColor();
+        return AnimationUtils.lerpColor(normalColor,
+                colors.getColorForState(SELECTED_STATE_SET, normalColor), step / (float) SWIPE_COLOR_STEPS);
+    }
 
     private float getScrollPosition() {
         return mTabStrip.getIndicatorPosition();
     }
 
+    /**
+     * 开始批量修改tab，直到{@link #commitBatch()}才统一编号，选中和布局
+     * 期间可以多次调用addTab，removeTab，Tab.setText等，可以嵌套
+     * 分割线，文字颜色大小，背景等样式修改也会等到提交的时候一起更新，不会触发选中回调
+     */
+    public void beginBatch() {
+        mBatchDepth++;
+    }
+
+    /**
+     * 提交批量修改，只会请求一次布局
+     */
+    public void commitBatch() {
+        if (mBatchDepth == 0) {
+            throw new IllegalStateException("commitBatch() called without beginBatch()");
+        }
+        if (--mBatchDepth > 0) {
+            return;
+        }
+        updateTabPositions();
+        final int styleChanges = mPendingStyleChanges;
+        mPendingStyleChanges = 0;
+        if (styleChanges != 0) {
+            applyStyleChanges(styleChanges);
+        }
+        final Tab selectTab = mBatchSelectedTab;
+        mBatchSelectedTab = null;
+        mTabStrip.requestLayout();
+        mTabStrip.invalidate();
+        if (selectTab != null && selectTab.mParent == this) {
+            selectTab(selectTab);
+        }
+    }
+
+    private void updateTabPositions() {
+        for (int i = mBatchDirtyPosition, count = mTabs.size(); i < count; i++) {
+            mTabs.get(i).setPosition(i);
+        }
+        mBatchDirtyPosition = Integer.MAX_VALUE;
+    }
+
     /**
      * Add a tab to this layout. The tab will be added at the end of the list.
      * If this is the first tab to be added it will become the selected tab.
@@ -557,7 +978,7 @@ public class XTabLayout extends HorizontalScrollView {
             //没有tab就设置tabposition为0
             tab.setPosition(0);
         }
-        addTabView(tab, setSelected);
+        addTabView(mTabs.size());
         configureTab(tab, mTabs.size());
         if (setSelected) {
             tab.select();
@@ -576,7 +997,7 @@ public class XTabLayout extends HorizontalScrollView {
             throw new IllegalArgumentException("Tab belongs to a different TabLayout.");
         }
 
-        addTabView(tab, position, setSelected);
+        addTabView(position);
         configureTab(tab, position);
         if (setSelected) {
             tab.select();
@@ -602,9 +1023,7 @@ public class XTabLayout extends HorizontalScrollView {
             return;
         }
         this.xTabItemBackground = tabItemBackground;
-        if (mSelectedTab != null) {
-            selectTab(mSelectedTab);
-        }
+        onStyleChanged(STYLE_TAB_BACKGROUND);
     }
 
     /**
@@ -621,9 +1040,7 @@ public class XTabLayout extends HorizontalScrollView {
             return;
         }
         this.xTabItemSelectedBackground = tabItemSelectedBackground;
-        if (mSelectedTab != null) {
-            selectTab(mSelectedTab);
-        }
+        onStyleChanged(STYLE_TAB_BACKGROUND);
     }
 
     /**
@@ -684,7 +1101,7 @@ public class XTabLayout extends HorizontalScrollView {
             tab = new Tab();
         }
         tab.mParent = this;
-        tab.mView = createTabView(tab);
+        // tab只是数据，View等到测量或者可见的时候才创建
         return tab;
     }
 
@@ -697,6 +1114,14 @@ public class XTabLayout extends HorizontalScrollView {
         return mTabs.size();
     }
 
+    /**
+     * 测量后tab的宽度，回收模式和直接画文字时没有View，测试用
+     */
+    @VisibleForTesting
+    int getTabWidth(int position) {
+        return mTabStrip.getTabWidth(position);
+    }
+
     /**
      * Returns the tab at the specified index.
      */
@@ -725,7 +1150,8 @@ public class XTabLayout extends HorizontalScrollView {
             throw new IllegalArgumentException("Tab does not belong to this TabLayout.");
         }
 
-        removeTabAt(tab.getPosition());
+        // 批量修改时还没重新编号的tab直接查找位置，不为了删一个tab给后面的全部重新编号
+        removeTabAt(tab.mPosition < mBatchDirtyPosition ? tab.mPosition : mTabs.indexOf(tab));
     }
 
     /**
@@ -735,21 +1161,42 @@ public class XTabLayout extends HorizontalScrollView {
      * @param position Position of the tab to remove
      */
     public void removeTabAt(int position) {
-        final int selectedTabPosition = mSelectedTab != null ? mSelectedTab.getPosition() : 0;
+        final Tab removingTab = mTabs.get(position);
+        final boolean removingSelected = mSelectedTab != null
+                ? mSelectedTab == removingTab : position == 0;
+        final boolean removingBatchSelected = mBatchSelectedTab == removingTab;
+        if (mSelectedViewTab == removingTab) {
+            mSelectedViewTab = null;
+        }
         removeTabViewAt(position);
 
         final Tab removedTab = mTabs.remove(position);
         if (removedTab != null) {
+            if (removedTab.mHasIconAndText) {
+                mIconAndTextTabCount--;
+            }
             removedTab.reset();
             sTabPool.release(removedTab);
         }
 
+        if (mBatchDepth > 0) {
+            // 批量修改时最后再统一编号和选中
+            mBatchDirtyPosition = Math.min(mBatchDirtyPosition, position);
+            if (removingSelected || removingBatchSelected) {
+                if (removingSelected) {
+                    mSelectedTab = null;
+                }
+                mBatchSelectedTab = mTabs.isEmpty() ? null : mTabs.get(Math.max(0, position - 1));
+            }
+            return;
+        }
+
         final int newTabCount = mTabs.size();
         for (int i = position; i < newTabCount; i++) {
             mTabs.get(i).setPosition(i);
         }
 
-        if (selectedTabPosition == position) {
+        if (removingSelected) {
             selectTab(mTabs.isEmpty() ? null : mTabs.get(Math.max(0, position - 1)));
         }
     }
@@ -759,7 +1206,7 @@ public class XTabLayout extends HorizontalScrollView {
      */
     public void removeAllTabs() {
         // Remove all the views
-        for (int i = mTabStrip.getChildCount() - 1; i >= 0; i--) {
+        for (int i = mTabs.size() - 1; i >= 0; i--) {
             removeTabViewAt(i);
         }
 
@@ -771,6 +1218,9 @@ public class XTabLayout extends HorizontalScrollView {
         }
 
         mSelectedTab = null;
+        mSelectedViewTab = null;
+        mBatchSelectedTab = null;
+        mIconAndTextTabCount = 0;
     }
 
     /**
@@ -835,7 +1285,7 @@ public class XTabLayout extends HorizontalScrollView {
     public void setTabTextColors(@Nullable ColorStateList textColor) {
         if (mTabTextColors != textColor) {
             mTabTextColors = textColor;
-            updateAllTabs();
+            onStyleChanged(STYLE_TABS);
         }
     }
 
@@ -857,6 +1307,27 @@ public class XTabLayout extends HorizontalScrollView {
         setTabTextColors(createColorStateList(normalColor, selectedColor));
     }
 
+    /**
+     * 设置图标的着色，滑动时跟着文字颜色一起渐变
+     *
+     * @attr ref R.styleable#xTabIconTint
+     */
+    public void setTabIconTint(@Nullable ColorStateList iconTint) {
+        if (mTabIconTint != iconTint) {
+            mTabIconTint = iconTint;
+            onStyleChanged(STYLE_TABS);
+        }
+    }
+
+    public void setTabIconTint(int normalColor, int selectedColor) {
+        setTabIconTint(createColorStateList(normalColor, selectedColor));
+    }
+
+    @Nullable
+    public ColorStateList getTabIconTint() {
+        return mTabIconTint;
+    }
+
     /**
      * The one-stop shop for setting up this {@link XTabLayout} with a {@link ViewPager}.
      * <p>
@@ -969,24 +1440,88 @@ public class XTabLayout extends HorizontalScrollView {
     }
 
     private void populateFromPagerAdapter() {
-        removeAllTabs();
+        beginBatch();
+        try {
+            if (mPagerAdapter != null) {
+                final int adapterCount = mPagerAdapter.getCount();
 
-        if (mPagerAdapter != null) {
-            final int adapterCount = mPagerAdapter.getCount();
+                if (mTabs.isEmpty()) {
+                    for (int i = 0; i < adapterCount; i++) {
+                        addTab(newTab().setText(mPagerAdapter.getPageTitle(i)), false);
+                    }
+                } else {
+                    // 已经有tab了，只修改变化的部分
+                    updateTabsFromPagerAdapter(adapterCount);
+                }
 
-            for (int i = 0; i < adapterCount; i++) {
-                addTab(newTab().setText(mPagerAdapter.getPageTitle(i)), false);
+                // Make sure we reflect the currently set ViewPager item
+                if (mViewPager != null && adapterCount > 0) {
+                    final int curItem = mViewPager.getCurrentItem();
+                    if (curItem != getSelectedTabPosition() && curItem < getTabCount()) {
+                        selectTab(getTabAt(curItem));
+                    }
+                }
+            } else {
+                removeAllTabs();
             }
+        } finally {
+            commitBatch();
+        }
+    }
 
-            // Make sure we reflect the currently set ViewPager item
-            if (mViewPager != null && adapterCount > 0) {
-                final int curItem = mViewPager.getCurrentItem();
-                if (curItem != getSelectedTabPosition() && curItem < getTabCount()) {
-                    selectTab(getTabAt(curItem));
-                }
+    /**
+     * 根据PagerAdapter的标题做差异更新，不重建没有变化的tab
+     * 头尾相同的部分保留，中间部分先原地改标题，多的插入，少的删除
+     *
+     * @param adapterCount adapter当前的数量
+     */
+    private void updateTabsFromPagerAdapter(int adapterCount) {
+        final int oldCount = mTabs.size();
+        final CharSequence[] titles = new CharSequence[adapterCount];
+        for (int i = 0; i < adapterCount; i++) {
+            titles[i] = mPagerAdapter.getPageTitle(i);
+        }
+
+        // 相同的前缀
+        int start = 0;
+        while (start < oldCount && start < adapterCount
+                && TextUtils.equals(mTabs.get(start).getText(), titles[start])) {
+            start++;
+        }
+        // 相同的后缀
+        int oldEnd = oldCount;
+        int newEnd = adapterCount;
+        while (oldEnd > start && newEnd > start
+                && TextUtils.equals(mTabs.get(oldEnd - 1).getText(), titles[newEnd - 1])) {
+            oldEnd--;
+            newEnd--;
+        }
+
+        // 重叠的部分只改标题
+        final int overlap = Math.min(oldEnd - start, newEnd - start);
+        for (int i = start; i < start + overlap; i++) {
+            final Tab tab = mTabs.get(i);
+            if (!TextUtils.equals(tab.getText(), titles[i])) {
+                tab.setText(titles[i]);
+            }
+        }
+
+        final int changedPosition = start + overlap;
+        if (newEnd > oldEnd) {
+            // 新增
+            for (int i = changedPosition; i < newEnd; i++) {
+                addTab(newTab().setText(titles[i]), i, false);
             }
         } else {
-            removeAllTabs();
+            // 删除
+            for (int i = changedPosition; i < oldEnd; i++) {
+                removeTabAt(changedPosition);
+            }
+        }
+
+        if (oldEnd != newEnd && mSelectedTab != null) {
+            // 选中的tab位置可能变了，指示器跟着走，不改变滚动距离
+            mTabStrip.setIndicatorPositionFromTabPosition(mSelectedTab.getPosition(), 0f);
         }
     }
 
@@ -996,10 +1531,36 @@ public class XTabLayout extends HorizontalScrollView {
         }
     }
 
+    /**
+     * 在主线程空闲的时候提前创建tab View放到池子里，每次空闲只创建一个
+     * 之后添加tab的时候直接从池子里拿，不用再创建
+     *
+     * @param count 要创建的个数，池子满了就停止
+     */
+    public void prewarmTabViews(final int count) {
+        if (count <= 0) {
+            return;
+        }
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            private int mRemaining = count;
+
+            @Override
+            public boolean queueIdle() {
+                final TabView tabView = new TabView(getContext(), XTabLayout.this);
+                // 先把图标和文字创建好
+                tabView.update();
+                return mTabViewPool.release(tabView) && --mRemaining > 0;
+            }
+        });
+    }
+
     private TabView createTabView(@NonNull final Tab tab) {
-        TabView tabView = mTabViewPool != null ? mTabViewPool.acquire() : null;
+        TabView tabView = mTabViewPool.acquire();
         if (tabView == null) {
-            tabView = new TabView(getContext());
+            tabView = new TabView(getContext(), this);
+        } else {
+            // 可能是别的XTabLayout放回池子的
+            tabView.setOwner(this);
         }
         tabView.setTab(tab);
         tabView.setFocusable(true);
@@ -1010,24 +1571,29 @@ public class XTabLayout extends HorizontalScrollView {
     private void configureTab(Tab tab, int position) {
         tab.setPosition(position);
         mTabs.add(position, tab);
+        if (tab.mHasIconAndText) {
+            mIconAndTextTabCount++;
+        }
 
         final int count = mTabs.size();
+        if (mBatchDepth > 0) {
+            // 批量修改时最后再统一编号
+            if (position != count - 1) {
+                mBatchDirtyPosition = Math.min(mBatchDirtyPosition, position + 1);
+            }
+            return;
+        }
         for (int i = position + 1; i < count; i++) {
             mTabs.get(i).setPosition(i);
         }
     }
 
-    private void addTabView(Tab tab, boolean setSelected) {
-        final TabView tabView = tab.mView;
-
-        mTabStrip.addView(tabView, createLayoutParamsForTabs());
-        tabView.setSelected(setSelected);
-    }
-
-    private void addTabView(Tab tab, int position, boolean setSelected) {
-        final TabView tabView = tab.mView;
-        mTabStrip.addView(tabView, position, createLayoutParamsForTabs());
-        tabView.setSelected(setSelected);
+    private void addTabView(int position) {
+        if (mTabStrip.isRecycle()) {
+            mTabStrip.onTabInserted(position);
+        } else {
+            mTabStrip.onTabViewPending();
+        }
     }
 
     @Override
@@ -1059,38 +1625,68 @@ public class XTabLayout extends HorizontalScrollView {
     }
 
     private LinearLayout.LayoutParams createLayoutParamsForTabs() {
-        final LinearLayout.LayoutParams lp = new LinearLayout.LayoutParams(
+        return new LinearLayout.LayoutParams(
                 LayoutParams.WRAP_CONTENT, LayoutParams.MATCH_PARENT);
-        updateTabViewLayoutParams(lp);
-        return lp;
-    }
-
-    private void updateTabViewLayoutParams(LinearLayout.LayoutParams lp) {
-        if (mMode == MODE_FIXED && mTabGravity == GRAVITY_FILL) {
-            lp.width = 0;
-            lp.weight = 1;
-        } else if (mMode == MODE_AUTO && mTabGravity == GRAVITY_FILL) {
-            if (mTabStrip.getMeasuredWidth() < getMeasuredWidth()) {
-                lp.width = 0;
-                lp.weight = 1;
-            } else {
-                lp.width = LinearLayout.LayoutParams.WRAP_CONTENT;
-                lp.weight = 0;
-            }
-        } else {
-            lp.width = LinearLayout.LayoutParams.WRAP_CONTENT;
-            lp.weight = 0;
-        }
     }
 
     private int dpToPx(int dps) {
-        return Math.round(getResources().getDisplayMetrics().density * dps);
+        return Math.round(mDensity * dps);
+    }
+
+    private void updateDisplayMetrics() {
+        final DisplayMetrics metrics = getResources().getDisplayMetrics();
+        mDensity = metrics.density;
+        mDisplayWidth = metrics.widthPixels;
+    }
+
+    /**
+     * 一屏显示几个tab时用来平分的宽度，还没有大小的时候先用屏幕宽度
+     */
+    private int getDisplayNumWidth() {
+        return mLayoutWidth > 0 ? mLayoutWidth : mDisplayWidth;
+    }
+
+    @Override
+    protected void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        updateDisplayMetrics();
+    }
+
+    /**
+     * 测量时宽度变了，在测量tab之前更新最小宽度，测量完不用再请求一次布局
+     */
+    private void updateLayoutWidth(int layoutWidth) {
+        if (layoutWidth == mLayoutWidth) {
+            return;
+        }
+        final int oldTabMinWidth = getTabMinWidth();
+        mLayoutWidth = layoutWidth;
+        if (getTabMinWidth() != oldTabMinWidth) {
+            // 先标记自己要布局，tab的requestLayout传到这里就停了，不会再排一次布局
+            forceLayout();
+            updateTabViews(false);
+        }
     }
 
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
         super.onLayout(changed, l, t, r, b);
         onLayoutOk = true;
+        if (mPendingSelectPosition != Tab.INVALID_POSITION) {
+            final int position = mPendingSelectPosition;
+            mPendingSelectPosition = Tab.INVALID_POSITION;
+            // 等待期间tab可能被删了
+            if (position < getTabCount()) {
+                selectTab(getTabAt(position), true, mPendingSelectNotify);
+            }
+        }
+    }
+
+    @Override
+    protected void onScrollChanged(int l, int t, int oldl, int oldt) {
+        super.onScrollChanged(l, t, oldl, oldt);
+        // 回收模式下，滑动时更新可见的tab
+        mTabStrip.fillVisibleTabs();
     }
 
     @Override
@@ -1111,13 +1707,12 @@ public class XTabLayout extends HorizontalScrollView {
 
         final int specWidth = MeasureSpec.getSize(widthMeasureSpec);
         if (MeasureSpec.getMode(widthMeasureSpec) != MeasureSpec.UNSPECIFIED) {
+            updateLayoutWidth(specWidth - getPaddingLeft() - getPaddingRight());
             // If we don't have an unspecified width spec, use the given size to calculate
             // the max tab width
             if (mPagerAdapter != null && xTabDisplayNum != 0) {
                 if (mPagerAdapter.getCount() == 1 || xTabDisplayNum == 1) {
-                    WindowManager wm = (WindowManager) getContext()
-                            .getSystemService(Context.WINDOW_SERVICE);
-                    mTabMaxWidth = wm.getDefaultDisplay().getWidth();
+                    mTabMaxWidth = getDisplayNumWidth();
                 } else {
                     mTabMaxWidth = mRequestedTabMaxWidth > 0
                             ? mRequestedTabMaxWidth
@@ -1166,13 +1761,20 @@ public class XTabLayout extends HorizontalScrollView {
     }
 
     private void removeTabViewAt(int position) {
-        final TabView view = (TabView) mTabStrip.getChildAt(position);
-        mTabStrip.removeViewAt(position);
-        if (view != null) {
-            view.reset();
-            mTabViewPool.release(view);
+        if (mTabStrip.isRecycle()) {
+            mTabStrip.onTabRemoved(position);
+        } else {
+            // 还没测量过的tab没有View
+            final TabView view = mTabs.get(position).mView;
+            if (view != null) {
+                mTabStrip.removeTabView(view);
+                view.reset();
+                mTabViewPool.release(view);
+            }
+        }
+        if (mBatchDepth == 0) {
+            requestLayout();
         }
-        requestLayout();
     }
 
     private void animateToTab(int newPosition) {
@@ -1190,38 +1792,161 @@ public class XTabLayout extends HorizontalScrollView {
 
         final int startScrollX = getScrollX();
         final int targetScrollX = calculateScrollXForTab(newPosition, 0);
-        if (startScrollX != targetScrollX) {
-            if (mScrollAnimator == null) {
-                mScrollAnimator = new ValueAnimator();
-                mScrollAnimator.setInterpolator(AnimationUtils.FAST_OUT_SLOW_IN_INTERPOLATOR);
-                mScrollAnimator.setDuration(ANIMATION_DURATION);
-                mScrollAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-                    @Override
-                    public void onAnimationUpdate(ValueAnimator animator) {
-                        scrollTo((int) animator.getAnimatedValue(), 0);
-                    }
-                });
+        // 滚动和指示器一起动，指示器在浮层上的时候用属性动画
+        final boolean animateIndicator = !mTabStrip.animateIndicatorLayer(newPosition, ANIMATION_DURATION)
+                && mTabStrip.prepareIndicatorAnimation(newPosition);
+        mTabAnimator.start(ANIMATION_DURATION, startScrollX, targetScrollX, animateIndicator);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        // 不再绘制了，直接到最后的位置，不让Choreographer继续持有
+        mTabAnimator.end();
+    }
+
+    /**
+     * 滚动和指示器共用的动画，由Choreographer每帧驱动，用同一个时间和插值
+     * 数据都是基本类型，选中tab和每一帧都不会创建对象
+     */
+    private class TabAnimator implements Choreographer.FrameCallback {
+        private boolean mRunning;
+        /**
+         * 开始的时间，-1表示用第一帧的时间
+         */
+        private long mStartTimeNanos;
+        private int mDuration;
+        private boolean mScrollRunning;
+        private int mStartScrollX;
+        private int mTargetScrollX;
+        private boolean mIndicatorRunning;
+
+        void start(int duration, int startScrollX, int targetScrollX, boolean animateIndicator) {
+            mDuration = duration;
+            mStartTimeNanos = -1;
+            mStartScrollX = startScrollX;
+            mTargetScrollX = targetScrollX;
+            mScrollRunning = startScrollX != targetScrollX;
+            mIndicatorRunning = animateIndicator;
+            if (!mScrollRunning && !mIndicatorRunning) {
+                stopIfIdle();
+            } else if (!mRunning) {
+                mRunning = true;
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        }
+
+        boolean isIndicatorRunning() {
+            return mIndicatorRunning;
+        }
+
+        void cancelScroll() {
+            mScrollRunning = false;
+            stopIfIdle();
+        }
+
+        void cancelIndicator() {
+            if (mIndicatorRunning) {
+                mIndicatorRunning = false;
+                mTabStrip.mAnimationTargetPosition = -1;
+            }
+            stopIfIdle();
+        }
+
+        /**
+         * 直接跳到结束的位置
+         */
+        void end() {
+            if (mRunning) {
+                Choreographer.getInstance().removeFrameCallback(this);
+                apply(1f);
+            }
+        }
+
+        private void stopIfIdle() {
+            if (mRunning && !mScrollRunning && !mIndicatorRunning) {
+                mRunning = false;
+                Choreographer.getInstance().removeFrameCallback(this);
             }
+        }
 
-            mScrollAnimator.setIntValues(startScrollX, targetScrollX);
-            mScrollAnimator.start();
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!mRunning) {
+                return;
+            }
+            if (mStartTimeNanos < 0) {
+                mStartTimeNanos = frameTimeNanos;
+            }
+            final float fraction = mDuration > 0
+                    ? Math.min(1f, (frameTimeNanos - mStartTimeNanos) / (mDuration * 1000000f))
+                    : 1f;
+            apply(fraction);
+            if (mRunning) {
+                Choreographer.getInstance().postFrameCallback(this);
+            }
         }
 
-        // Now animate the indicator
-        mTabStrip.animateIndicatorToPosition(newPosition, ANIMATION_DURATION);
+        private void apply(float fraction) {
+            final float value = AnimationUtils.FAST_OUT_SLOW_IN_INTERPOLATOR.getInterpolation(fraction);
+            if (mScrollRunning) {
+                scrollTo(AnimationUtils.lerp(mStartScrollX, mTargetScrollX, value), 0);
+            }
+            if (mIndicatorRunning) {
+                mTabStrip.setIndicatorAnimationFraction(value);
+            }
+            if (fraction >= 1f) {
+                mRunning = false;
+                mScrollRunning = false;
+                if (mIndicatorRunning) {
+                    mIndicatorRunning = false;
+                    mTabStrip.onIndicatorAnimationEnd();
+                }
+            }
+        }
     }
 
+    /**
+     * 只修改之前选中和现在选中的两个tab，和tab的数量无关
+     */
     private void setSelectedTabView(int position) {
-        final int tabCount = mTabStrip.getChildCount();
-        if (position < tabCount && !mTabStrip.getChildAt(position).isSelected()) {
-            for (int i = 0; i < tabCount; i++) {
-                final View child = mTabStrip.getChildAt(i);
-                child.setSelected(i == position);
+        final int tabCount = getTabCount();
+        if (position < 0 || position >= tabCount) {
+            return;
+        }
+        final Tab tab = mTabs.get(position);
+        final TabView target = tab.mView;
+        if (tab != mSelectedViewTab || (target != null && !target.isSelected())) {
+            final Tab oldTab = mSelectedViewTab;
+            mSelectedViewTab = tab;
+            // 选中的文字大小不一样，回收模式下宽度会变，直接画文字时宽度按大的字号算
+            final boolean widthChanged = mTabTextSize != mTabSelectedTextSize
+                    && !xTabTextSelectedScale && !mTabStrip.isCanvasMode();
+            if (oldTab != null && oldTab != tab) {
+                if (oldTab.mView != null) {
+                    oldTab.mView.setSelected(false);
+                }
+                if (widthChanged) {
+                    mTabStrip.invalidateTabWidth(oldTab.getPosition());
+                }
+            }
+            if (target != null) {
+                target.setSelected(true);
             }
+            if (widthChanged) {
+                mTabStrip.invalidateTabWidth(position);
+            }
+            mTabStrip.onSelectedTabChanged(oldTab != null ? oldTab.getPosition() : Tab.INVALID_POSITION,
+                    position);
         }
     }
 
     void selectTab(Tab tab) {
+        if (mBatchDepth > 0) {
+            // 批量修改时提交的时候再选中
+            mBatchSelectedTab = tab;
+            return;
+        }
         selectTab(tab, true, true);
     }
 
@@ -1278,16 +2003,14 @@ public class XTabLayout extends HorizontalScrollView {
 
     private int calculateScrollXForTab(int position, float positionOffset) {
         if (mMode == MODE_SCROLLABLE || mMode == MODE_AUTO) {
-            final View selectedChild = mTabStrip.getChildAt(position);
-            final View nextChild = position + 1 < mTabStrip.getChildCount()
-                    ? mTabStrip.getChildAt(position + 1)
-                    : null;
-            final int selectedWidth = selectedChild != null ? selectedChild.getWidth() : 0;
-            final int nextWidth = nextChild != null ? nextChild.getWidth() : 0;
-
-            return selectedChild.getLeft()
+            final int selectedWidth = mTabStrip.getTabWidth(position);
+            final int nextWidth = position + 1 < getTabCount()
+                    ? mTabStrip.getTabWidth(position + 1)
+                    : 0;
+
+            return mTabStrip.getTabLeft(position)
                     + ((int) ((selectedWidth + nextWidth) * positionOffset * 0.5f))
-                    + (selectedChild.getWidth() / 2)
+                    + (selectedWidth / 2)
                     - (getWidth() / 2);
         }
         return 0;
@@ -1300,6 +2023,8 @@ public class XTabLayout extends HorizontalScrollView {
             paddingStart = Math.max(0, mContentInsetStart - mTabPaddingStart);
         }
         mTabStrip.setPadding(paddingStart, 0, 0, 0);
+        final boolean scrollable = mMode == MODE_SCROLLABLE;
+        mTabStrip.setRecycle((xTabRecycle || xTabCanvasMode) && scrollable, xTabCanvasMode && scrollable);
         switch (mMode) {
             case MODE_FIXED:
                 mTabStrip.setGravity(Gravity.CENTER_HORIZONTAL);
@@ -1318,11 +2043,12 @@ public class XTabLayout extends HorizontalScrollView {
         for (int i = 0; i < mTabStrip.getChildCount(); i++) {
             View child = mTabStrip.getChildAt(i);
             child.setMinimumWidth(getTabMinWidth());
-            updateTabViewLayoutParams((LinearLayout.LayoutParams) child.getLayoutParams());
             if (requestLayout) {
                 child.requestLayout();
             }
         }
+        // 最小宽度可能变了，回收模式下重新测量
+        mTabStrip.invalidateTabWidths();
     }
 
     /**
@@ -1341,11 +2067,19 @@ public class XTabLayout extends HorizontalScrollView {
         private Drawable mIcon;
         private CharSequence mText;
         private CharSequence mContentDesc;
+        /**
+         * 图标和文字都有，XTabLayout记了这种tab的数量
+         */
+        private boolean mHasIconAndText;
         private int mPosition = INVALID_POSITION;
         private View mCustomView;
 
         private XTabLayout mParent;
         private TabView mView;
+        /**
+         * 直接画文字时缓存的文字排版，内容或样式变了就重新创建
+         */
+        private Layout mLabelLayout;
 
         private Tab() {
             // Private constructor
@@ -1361,7 +2095,11 @@ public class XTabLayout extends HorizontalScrollView {
         }
 
         public int getTextWidth() {
-            return mView.getTextWidth();
+            if (mView == null && mParent != null && mParent.mTabStrip.isCanvasMode()) {
+                return mParent.mTabStrip.getLabelWidth(this);
+            }
+            // 回收模式下，不可见的tab没有View
+            return mView != null ? mView.getTextWidth() : 0;
         }
 
         /**
@@ -1423,8 +2161,12 @@ public class XTabLayout extends HorizontalScrollView {
          */
         @NonNull
         public Tab setCustomView(@LayoutRes int resId) {
-            final LayoutInflater inflater = LayoutInflater.from(mView.getContext());
-            return setCustomView(inflater.inflate(resId, mView, false));
+            if (mParent == null) {
+                throw new IllegalArgumentException("Tab not attached to a TabLayout");
+            }
+            final LayoutInflater inflater = LayoutInflater.from(mParent.getContext());
+            final ViewGroup root = mView != null ? mView : mParent.mTabStrip;
+            return setCustomView(inflater.inflate(resId, root, false));
         }
 
         /**
@@ -1444,6 +2186,9 @@ public class XTabLayout extends HorizontalScrollView {
          * the action bar.
          */
         public int getPosition() {
+            if (mParent != null && mParent.mBatchDirtyPosition < mParent.mTabs.size()) {
+                mParent.updateTabPositions();
+            }
             return mPosition;
         }
 
@@ -1471,10 +2216,24 @@ public class XTabLayout extends HorizontalScrollView {
         @NonNull
         public Tab setIcon(@Nullable Drawable icon) {
             mIcon = icon;
+            updateHasIconAndText();
             updateView();
             return this;
         }
 
+        /**
+         * 图标或文字变了，已经添加的tab要更新XTabLayout里的数量
+         */
+        private void updateHasIconAndText() {
+            final boolean hasIconAndText = mIcon != null && !TextUtils.isEmpty(mText);
+            if (hasIconAndText != mHasIconAndText) {
+                mHasIconAndText = hasIconAndText;
+                if (mParent != null && mPosition != INVALID_POSITION) {
+                    mParent.mIconAndTextTabCount += hasIconAndText ? 1 : -1;
+                }
+            }
+        }
+
         /**
          * Set the icon displayed on this tab.
          *
@@ -1499,6 +2258,7 @@ public class XTabLayout extends HorizontalScrollView {
         @NonNull
         public Tab setText(@Nullable CharSequence text) {
             mText = text;
+            updateHasIconAndText();
             updateView();
             return this;
         }
@@ -1584,24 +2344,32 @@ public class XTabLayout extends HorizontalScrollView {
         }
 
         private void updateView() {
+            mLabelLayout = null;
             if (mView != null) {
                 mView.update();
             }
+            if (mParent != null) {
+                // 回收模式下内容变了要重新测量宽度，批量修改时位置可能还没重新编号
+                mParent.mTabStrip.invalidateTabWidth(getPosition());
+            }
         }
 
         private void reset() {
             mParent = null;
             mView = null;
+            mLabelLayout = null;
             mTag = null;
             mIcon = null;
             mText = null;
+            mHasIconAndText = false;
             mContentDesc = null;
             mPosition = INVALID_POSITION;
             mCustomView = null;
         }
     }
 
-    class TabView extends LinearLayout implements OnLongClickListener {
+    static class TabView extends LinearLayout implements OnLongClickListener {
+        private XTabLayout mOwner;
         private Tab mTab;
         private TextView mTextView;
         private ImageView mIconView;
@@ -1610,33 +2378,162 @@ public class XTabLayout extends HorizontalScrollView {
         private TextView mCustomTextView;
         private ImageView mCustomIconView;
 
-        private int mDefaultMaxLines = 2;
+        private int mDefaultMaxLines = DEFAULT_MAX_LINES;
+        /**
+         * 滑动时设置在图标上的颜色过滤，恢复的时候清掉
+         */
+        private ColorFilter mSwipeIconFilter;
+
+        /**
+         * 文字宽度的缓存，文字，大小，字体，大小写都没变就不重新测量
+         */
+        private final Rect mTextBounds = new Rect();
+        private CharSequence mTextWidthText;
+        private float mTextWidthSize;
+        private Typeface mTextWidthTypeface;
+        private boolean mTextWidthAllCaps;
+        private int mTextWidth = -1;
+        /**
+         * 不限制宽度测量出来的宽度，requestLayout的时候失效
+         */
+        int mIntrinsicWidth = -1;
+        /**
+         * onMeasure里多行判断的缓存，条件都没变就跳过判断和第二次测量
+         */
+        private boolean mMeasureDecisionValid;
+        private int mDecisionWidthSpec;
+        private float mDecisionTextSize;
+        private Typeface mDecisionTypeface;
+        private int mDecisionMaxLines;
+        private boolean mDecisionIconVisible;
+        private CharSequence mDecisionText;
+        /**
+         * 缩放模式下用画笔加粗了
+         */
+        private boolean mFakeBold;
 
-        public TabView(Context context) {
+        public TabView(Context context, XTabLayout owner) {
             super(context);
+            mOwner = owner;
           /*  if (mTabBackgroundResId != 0) {
                 setBackgroundDrawable(
                         AppCompatDrawableManager.get().getDrawable(context, mTabBackgroundResId));
             }*/
-            ViewCompat.setPaddingRelative(this, mTabPaddingStart, mTabPaddingTop,
-                    mTabPaddingEnd, mTabPaddingBottom);
+            ViewCompat.setPaddingRelative(this, mOwner.mTabPaddingStart, mOwner.mTabPaddingTop,
+                    mOwner.mTabPaddingEnd, mOwner.mTabPaddingBottom);
             setGravity(Gravity.CENTER);
             setOrientation(VERTICAL);
             setClickable(true);
         }
 
+        /**
+         * 从池子里拿出来给别的XTabLayout用，内边距按新的来，缓存都失效
+         */
+        void setOwner(XTabLayout owner) {
+            if (mOwner != owner) {
+                mOwner = owner;
+                ViewCompat.setPaddingRelative(this, owner.mTabPaddingStart, owner.mTabPaddingTop,
+                        owner.mTabPaddingEnd, owner.mTabPaddingBottom);
+                mIntrinsicWidth = -1;
+                mMeasureDecisionValid = false;
+                mTextWidth = -1;
+            }
+        }
+
         public String getText() {
             return mTextView.getText().toString();
         }
 
         public int getTextWidth() {
-            if (TextUtils.isEmpty(mTextView.getText().toString())) {
+            if (mTextView == null) {
                 return 0;
             }
-            Rect rect = new Rect();
-            String content = mTextView.getText().toString();
-            mTextView.getPaint().getTextBounds(content, 0, content.length(), rect);
-            return rect.width();
+            final CharSequence text = mTextView.getText();
+            final Paint paint = mTextView.getPaint();
+            final float textSize = paint.getTextSize();
+            final Typeface typeface = paint.getTypeface();
+            if (mTextWidth < 0 || text != mTextWidthText || textSize != mTextWidthSize
+                    || typeface != mTextWidthTypeface || mOwner.xTabTextAllCaps != mTextWidthAllCaps) {
+                mTextWidthText = text;
+                mTextWidthSize = textSize;
+                mTextWidthTypeface = typeface;
+                mTextWidthAllCaps = mOwner.xTabTextAllCaps;
+                if (TextUtils.isEmpty(text)) {
+                    mTextWidth = 0;
+                } else {
+                    String content = text.toString();
+                    if (mOwner.xTabTextAllCaps) {
+                        content = content.toUpperCase(Locale.getDefault());
+                    }
+                    paint.getTextBounds(content, 0, content.length(), mTextBounds);
+                    mTextWidth = mTextBounds.width();
+                }
+            }
+            if (mOwner.xTabTextSelectedScale) {
+                // 按大的字号排版的，看到的宽度要乘上缩放
+                return Math.round(mTextWidth * mTextView.getScaleX());
+            }
+            return mTextWidth;
+        }
+
+        /**
+         * 排版用的文字大小，缩放模式下都用大的那个，选中状态不影响宽度
+         */
+        private float getLayoutTextSize(boolean selected) {
+            if (mOwner.xTabTextSelectedScale) {
+                return Math.max(mOwner.mTabTextSize, mOwner.mTabSelectedTextSize);
+            }
+            return selected ? mOwner.mTabSelectedTextSize : mOwner.mTabTextSize;
+        }
+
+        /**
+         * 根据选中状态设置文字大小和加粗
+         * 缩放模式下文字大小不变，只改缩放和画笔的加粗，不会重新布局
+         */
+        void updateTextStyle(boolean selected) {
+            if (mTextView == null) {
+                return;
+            }
+            final boolean bold = selected ? mOwner.xTabTextSelectedBold : mOwner.xTabTextBold;
+            mTextView.setTextSize(TypedValue.COMPLEX_UNIT_PX, getLayoutTextSize(selected));
+            if (mOwner.xTabTextSelectedScale) {
+                mTextView.setTypeface(Typeface.defaultFromStyle(Typeface.NORMAL));
+                setFakeBold(bold);
+                setTextSelectedFraction(selected ? 1f : 0f);
+            } else {
+                if (mFakeBold) {
+                    setFakeBold(false);
+                }
+                mTextView.setScaleX(1f);
+                mTextView.setScaleY(1f);
+                mTextView.setTypeface(Typeface.defaultFromStyle(bold ? Typeface.BOLD : Typeface.NORMAL));
+            }
+        }
+
+        private void setFakeBold(boolean bold) {
+            final Paint paint = mTextView.getPaint();
+            mFakeBold = bold;
+            if (paint.isFakeBoldText() != bold) {
+                // 只改画笔，宽度不变，重绘就可以
+                paint.setFakeBoldText(bold);
+                mTextView.invalidate();
+            }
+        }
+
+        /**
+         * 缩放模式下文字在没选中(0)到选中(1)之间的大小
+         */
+        void setTextSelectedFraction(float fraction) {
+            if (mTextView == null || !mOwner.xTabTextSelectedScale) {
+                return;
+            }
+            final float layoutSize = getLayoutTextSize(true);
+            if (layoutSize <= 0) {
+                return;
+            }
+            final float scale = AnimationUtils.lerp(mOwner.mTabTextSize, mOwner.mTabSelectedTextSize, fraction) / layoutSize;
+            mTextView.setScaleX(scale);
+            mTextView.setScaleY(scale);
         }
 
         @Override
@@ -1651,28 +2548,57 @@ public class XTabLayout extends HorizontalScrollView {
             }
         }
 
+        /**
+         * 滑动时设置提前创建好的渐变中的文字颜色和图标颜色过滤，为null的不改，同一级不重新设置
+         */
+        void setSwipeColors(@Nullable ColorStateList textColor, @Nullable ColorFilter iconFilter) {
+            if (mTextView != null && textColor != null && mTextView.getTextColors() != textColor) {
+                mTextView.setTextColor(textColor);
+            }
+            if (mIconView != null && iconFilter != null && mSwipeIconFilter != iconFilter) {
+                // 颜色过滤优先于着色，恢复的时候清掉
+                mSwipeIconFilter = iconFilter;
+                mIconView.setColorFilter(iconFilter);
+            }
+        }
+
+        /**
+         * 恢复成按选中状态变化的颜色
+         */
+        void resetSwipeColors() {
+            final ColorStateList textColors = mOwner.mTabTextColors != null
+                    ? mOwner.mTabTextColors : mOwner.mTabAppearanceTextColors;
+            if (mTextView != null && textColors != null && mTextView.getTextColors() != textColors) {
+                mTextView.setTextColor(textColors);
+            }
+            if (mIconView != null) {
+                if (mSwipeIconFilter != null) {
+                    mSwipeIconFilter = null;
+                    mIconView.clearColorFilter();
+                    // 低版本的着色也是颜色过滤，清掉以后重新着色
+                    ImageViewCompat.setImageTintList(mIconView, mOwner.mTabIconTint);
+                } else if (ImageViewCompat.getImageTintList(mIconView) != mOwner.mTabIconTint) {
+                    ImageViewCompat.setImageTintList(mIconView, mOwner.mTabIconTint);
+                }
+            }
+        }
+
         @Override
         public void setSelected(boolean selected) {
             final boolean changed = (isSelected() != selected);
             super.setSelected(selected);
+            resetSwipeColors();
             if (!selected) {
-                setBackground(xTabItemBackground);
-                mTextView.setTextSize(TypedValue.COMPLEX_UNIT_PX, mTabTextSize);
-                mTextView.setTypeface(Typeface.defaultFromStyle(xTabTextBold ? Typeface.BOLD : Typeface.NORMAL));
+                setBackground(mOwner.xTabItemBackground);
+                updateTextStyle(false);
             }
             if (changed && selected) {
-                setBackground(xTabItemSelectedBackground);
+                setBackground(mOwner.xTabItemSelectedBackground);
                 sendAccessibilityEvent(AccessibilityEvent.TYPE_VIEW_SELECTED);
 
                 if (mTextView != null) {
                     mTextView.setSelected(selected);
-
-                    mTextView.setTextSize(TypedValue.COMPLEX_UNIT_PX, mTabSelectedTextSize);
-                    if (xTabTextSelectedBold) {
-                        mTextView.setTypeface(Typeface.defaultFromStyle(Typeface.BOLD));
-                    } else {
-                        mTextView.setTypeface(Typeface.defaultFromStyle(Typeface.NORMAL));
-                    }
+                    updateTextStyle(true);
                 }
                 if (mIconView != null) {
                     mIconView.setSelected(selected);
@@ -1700,7 +2626,7 @@ public class XTabLayout extends HorizontalScrollView {
         public void onMeasure(final int origWidthMeasureSpec, final int origHeightMeasureSpec) {
             final int specWidthSize = MeasureSpec.getSize(origWidthMeasureSpec);
             final int specWidthMode = MeasureSpec.getMode(origWidthMeasureSpec);
-            final int maxWidth = getTabMaxWidth();
+            final int maxWidth = mOwner.getTabMaxWidth();
 
             final int widthMeasureSpec;
             final int heightMeasureSpec = origHeightMeasureSpec;
@@ -1709,7 +2635,7 @@ public class XTabLayout extends HorizontalScrollView {
                     || specWidthSize > maxWidth)) {
                 // If we have a max width and a given spec which is either unspecified or
                 // larger than the max width, update the width spec using the same mode
-                widthMeasureSpec = MeasureSpec.makeMeasureSpec(mTabMaxWidth, MeasureSpec.AT_MOST);
+                widthMeasureSpec = MeasureSpec.makeMeasureSpec(mOwner.mTabMaxWidth, MeasureSpec.AT_MOST);
             } else {
                 // Else, use the original width spec
                 widthMeasureSpec = origWidthMeasureSpec;
@@ -1717,9 +2643,13 @@ public class XTabLayout extends HorizontalScrollView {
             // Now lets measure
             super.onMeasure(widthMeasureSpec, heightMeasureSpec);
 
+            if (mTextView != null && isMeasureDecisionValid(widthMeasureSpec)) {
+                // 文字和宽度都没变，上次已经判断过了，不用再测量第二次
+                return;
+            }
             // We need to switch the text size based on whether the text is spanning 2 lines or not
             if (mTextView != null) {
-                float textSize = mTabTextSize;
+                float textSize = getLayoutTextSize(mTextView.isSelected());
                 int maxLines = mDefaultMaxLines;
 
                 if (mIconView != null && mIconView.getVisibility() == VISIBLE) {
@@ -1727,7 +2657,7 @@ public class XTabLayout extends HorizontalScrollView {
                     maxLines = 1;
                 } else if (mTextView != null && mTextView.getLineCount() > 1) {
                     // Otherwise when we have text which wraps we reduce the text size
-                    textSize = mTabTextMultiLineSize;
+                    textSize = mOwner.mTabTextMultiLineSize;
                 }
 
                 final float curTextSize = mTextView.getTextSize();
@@ -1738,7 +2668,7 @@ public class XTabLayout extends HorizontalScrollView {
                     // We've got a new text size and/or max lines...
                     boolean updateTextView = true;
 
-                    if (mMode == MODE_FIXED && textSize > curTextSize && curLineCount == 1) {
+                    if (mOwner.mMode == MODE_FIXED && textSize > curTextSize && curLineCount == 1) {
                         // If we're in fixed mode, going up in text size and currently have 1 line
                         // then it's very easy to get into an infinite recursion.
                         // To combat that we check to see if the change in text size
@@ -1751,20 +2681,52 @@ public class XTabLayout extends HorizontalScrollView {
                     }
 
                     if (updateTextView) {
-                        if (mTextView.isSelected()) {
-                            mTextView.setTextSize(TypedValue.COMPLEX_UNIT_PX, mTabSelectedTextSize);
-                        } else {
-                            mTextView.setTextSize(TypedValue.COMPLEX_UNIT_PX, mTabTextSize);
-                        }
-                        if (mTextView.isSelected()) {
-                            mTextView.setTypeface(Typeface.defaultFromStyle(xTabTextSelectedBold ? Typeface.BOLD : Typeface.NORMAL));
-                        } else {
-                            mTextView.setTypeface(Typeface.defaultFromStyle(xTabTextBold ? Typeface.BOLD : Typeface.NORMAL));
-                        }
+                        updateTextStyle(mTextView.isSelected());
                         mTextView.setMaxLines(maxLines);
                         super.onMeasure(widthMeasureSpec, heightMeasureSpec);
                     }
                 }
+                saveMeasureDecision(widthMeasureSpec);
+            }
+        }
+
+        /**
+         * 上次多行判断之后，文字，宽度，大小，字体，行数，图标都没变
+         */
+        private boolean isMeasureDecisionValid(int widthMeasureSpec) {
+            return mMeasureDecisionValid
+                    && mDecisionWidthSpec == widthMeasureSpec
+                    && mDecisionTextSize == mTextView.getTextSize()
+                    && mDecisionTypeface == mTextView.getTypeface()
+                    && mDecisionMaxLines == TextViewCompat.getMaxLines(mTextView)
+                    && mDecisionIconVisible == isIconVisible()
+                    && TextUtils.equals(mDecisionText, mTextView.getText());
+        }
+
+        private void saveMeasureDecision(int widthMeasureSpec) {
+            mMeasureDecisionValid = true;
+            mDecisionWidthSpec = widthMeasureSpec;
+            mDecisionTextSize = mTextView.getTextSize();
+            mDecisionTypeface = mTextView.getTypeface();
+            mDecisionMaxLines = TextViewCompat.getMaxLines(mTextView);
+            mDecisionIconVisible = isIconVisible();
+            mDecisionText = mTextView.getText();
+        }
+
+        private boolean isIconVisible() {
+            return mIconView != null && mIconView.getVisibility() == VISIBLE;
+        }
+
+        @Override
+        public void requestLayout() {
+            super.requestLayout();
+            if (mIntrinsicWidth >= 0) {
+                // 内容变了，原始宽度要重新测量
+                if (mOwner != null) {
+                    mOwner.mTabStrip.invalidateIntrinsicWidth(this);
+                } else {
+                    mIntrinsicWidth = -1;
+                }
             }
         }
 
@@ -1818,32 +2780,25 @@ public class XTabLayout extends HorizontalScrollView {
             if (mCustomView == null) {
                 // If there isn't a custom view, we'll us our own in-built layouts
                 if (mIconView == null) {
-                    ImageView iconView = (ImageView) LayoutInflater.from(getContext())
-                            .inflate(R.layout.design_layout_xtab_icon, this, false);
-                    addView(iconView, 0);
+                    ImageView iconView = new AppCompatImageView(getContext());
+                    final int iconSize = mOwner.dpToPx(DEFAULT_ICON_SIZE);
+                    addView(iconView, 0, new LayoutParams(iconSize, iconSize));
                     mIconView = iconView;
                 }
                 if (mTextView == null) {
-                    TextView textView = (TextView) LayoutInflater.from(getContext())
-                            .inflate(R.layout.design_layout_xtab_text, this, false);
-                    addView(textView);
+                    TextView textView = new AppCompatTextView(getContext());
+                    // 外观里的阴影，字间距，字体等只在创建的时候设置一次，大小和颜色下面再设置
+                    TextViewCompat.setTextAppearance(textView, mOwner.mTabTextAppearance);
+                    textView.setEllipsize(TextUtils.TruncateAt.END);
+                    textView.setGravity(Gravity.CENTER);
+                    textView.setMaxLines(DEFAULT_MAX_LINES);
+                    addView(textView, new LayoutParams(LayoutParams.WRAP_CONTENT,
+                            LayoutParams.WRAP_CONTENT));
                     mTextView = textView;
-                    mDefaultMaxLines = TextViewCompat.getMaxLines(mTextView);
-                }
-                if (mTextView.isSelected()) {
-                    mTextView.setTextSize(TypedValue.COMPLEX_UNIT_PX, mTabSelectedTextSize);
-                } else {
-                    mTextView.setTextSize(TypedValue.COMPLEX_UNIT_PX, mTabTextSize);
-                }
-                if (mTextView.isSelected()) {
-                    mTextView.setTypeface(Typeface.defaultFromStyle(xTabTextSelectedBold ? Typeface.BOLD : Typeface.NORMAL));
-                } else {
-                    mTextView.setTypeface(Typeface.defaultFromStyle(xTabTextBold ? Typeface.BOLD : Typeface.NORMAL));
-                }
-                mTextView.setTextAppearance(getContext(), mTabTextAppearance);
-                if (mTabTextColors != null) {
-                    mTextView.setTextColor(mTabTextColors);
+                    mDefaultMaxLines = DEFAULT_MAX_LINES;
                 }
+                updateTextStyle(mTextView.isSelected());
+                resetSwipeColors();
                 updateTextAndIcon(mTextView, mIconView);
             } else {
                 // Else, we'll see if there is a TextView or ImageView present and update them
@@ -1874,7 +2829,7 @@ public class XTabLayout extends HorizontalScrollView {
             final boolean hasText = !TextUtils.isEmpty(text);
             if (textView != null) {
                 if (hasText) {
-                    textView.setAllCaps(xTabTextAllCaps);
+                    textView.setAllCaps(mOwner.xTabTextAllCaps);
                     textView.setText(text);
                     textView.setVisibility(VISIBLE);
                     setVisibility(VISIBLE);
@@ -1890,7 +2845,7 @@ public class XTabLayout extends HorizontalScrollView {
                 int bottomMargin = 0;
                 if (hasText && iconView.getVisibility() == VISIBLE) {
                     // If we're showing both text and icon, add some margin bottom to the icon
-                    bottomMargin = iconAndTextSpace;
+                    bottomMargin = mOwner.iconAndTextSpace;
                 }
                 if (bottomMargin != lp.bottomMargin) {
                     lp.bottomMargin = bottomMargin;
@@ -1914,7 +2869,7 @@ public class XTabLayout extends HorizontalScrollView {
             final Context context = getContext();
             final int width = getWidth();
             final int height = getHeight();
-            final int screenWidth = context.getResources().getDisplayMetrics().widthPixels;
+            final int screenWidth = mOwner.mDisplayWidth;
 
             Toast cheatSheet = Toast.makeText(context, mTab.getContentDescription(),
                     Toast.LENGTH_SHORT);
@@ -1953,13 +2908,144 @@ public class XTabLayout extends HorizontalScrollView {
 
         private int mIndicatorLeft = -1;
         private int mIndicatorRight = -1;
+        /**
+         * 指示器最终画的位置，位置或者样式变化的时候计算好，draw的时候直接画
+         */
+        private final Rect mIndicatorRect = new Rect();
+        /**
+         * 指示器变化后要重画的区域，旧的和新的区域合在一起，不重画整个strip
+         */
+        private final Rect mIndicatorDirtyRect = new Rect();
+        /**
+         * 画在浮层上的指示器，为null时在draw里画
+         */
+        private IndicatorLayer mIndicatorLayer;
+        /**
+         * 浮层动画结束后按最终的宽度重新布局，scaleX只在移动过程中用，不然圆角和渐变会被拉伸
+         */
+        private final Runnable mIndicatorLayerEndAction = new Runnable() {
+            @Override
+            public void run() {
+                mIndicatorLayerAnimating = false;
+                if (mIndicatorLayer != null) {
+                    updateIndicatorLayer(0, true);
+                }
+            }
+        };
+        private boolean mIndicatorLayerAnimating;
+        /**
+         * ViewPager正在滑动，浮层保持原来的宽度只改scaleX，停下来再按真实的宽度布局
+         */
+        private boolean mIndicatorScrolling;
+        /**
+         * 自定义的指示器样式，和这次移动开始，结束时的左右和进度，位置变化的时候算好
+         */
+        private IndicatorRenderer mIndicatorRenderer;
+        private int mIndicatorStartLeft;
+        private int mIndicatorStartRight;
+        private int mIndicatorEndLeft;
+        private int mIndicatorEndRight;
+        private float mIndicatorProgress;
+        /**
+         * 自定义样式可能画在移动经过的任何位置，上次重画的范围
+         */
+        private final Rect mIndicatorSpanRect = new Rect();
+        private final Rect mClipRect = new Rect();
+
+        /**
+         * 点击tab时指示器动画的开始位置和目标tab，结束位置每帧从tab的位置读，中途重新布局也能跟上
+         */
+        private int mAnimationStartLeft;
+        private int mAnimationStartRight;
+        private int mAnimationTargetPosition = -1;
+        private float mAnimationFraction;
+
+        /**
+         * 回收模式，只有可见的tab才有View
+         */
+        private boolean mRecycle;
+        /**
+         * 每个tab的宽度，回收模式下-1表示需要重新测量
+         * 非回收模式在onLayout里从子View重建，回收模式在onMeasure里测量
+         */
+        private int[] mTabWidths = new int[0];
+        /**
+         * 每个tab的左边，比tab多一个，最后一个是内容的右边
+         */
+        private int[] mTabLefts = new int[1];
+        private boolean mTabWidthsDirty;
+        /**
+         * 非回收模式下，布局之后又增删了View，数组还没更新
+         */
+        private boolean mTabEdgesDirty = true;
+        /**
+         * 非回收模式下，布局之后又添加了View，还没有宽度
+         */
+        private boolean mTabAddedSinceLayout;
+        /**
+         * 非回收模式下，宽度为0的tab数量
+         */
+        private int mZeroWidthTabCount;
+        /**
+         * 回收模式下用来测量没有View的tab
+         */
+        private TabView mMeasureTabView;
+        /**
+         * 非回收模式下还没有创建View的tab数量，测量的时候统一创建
+         */
+        private int mPendingTabViewCount;
+        /**
+         * 上次测量原始宽度时的高度和最大宽度，变了所有tab都要重新测量
+         */
+        private int mIntrinsicHeightSpec;
+        private int mIntrinsicTabMaxWidth;
+        /**
+         * 非回收模式下所有tab原始宽度的总和和最大值，增删tab和tab内容变化的时候更新
+         */
+        private int mIntrinsicTotalWidth;
+        private int mIntrinsicLargestWidth;
+        private boolean mIntrinsicLargestDirty;
+        private boolean mIntrinsicWidthsDirty = true;
+        /**
+         * 原始宽度失效了，下次测量的时候要重新测量的tab
+         */
+        private final ArrayList<TabView> mIntrinsicDirtyTabs = new ArrayList<>();
 
-        private ValueAnimator mIndicatorAnimator;
+        /**
+         * 直接画文字模式，一定也是回收模式，没有子View，用tab的位置数组画文字和点击
+         */
+        private boolean mCanvasMode;
+        /**
+         * 画文字的画笔，排版按大的字号，选中状态用缩放和加粗画出来
+         */
+        private final TextPaint mLabelPaint;
+        private final BoringLayout.Metrics mBoringMetrics = new BoringLayout.Metrics();
+        /**
+         * 上次创建文字排版时的字号，大小写，最大宽度，变了所有排版都要重新创建
+         */
+        private float mLabelTextSize;
+        private boolean mLabelAllCaps;
+        private int mLabelMaxWidth;
+        /**
+         * 缩放模式下滑动时文字渐变的一对tab
+         */
+        private int mLabelSwipePosition = Tab.INVALID_POSITION;
+        private float mLabelSwipeOffset;
+        /**
+         * 按下时所在的tab
+         */
+        private int mTouchTabIndex = -1;
+        /**
+         * 直接画文字时没选中和选中的颜色，测量的时候从ColorStateList取出来
+         */
+        private int mLabelNormalColor;
+        private int mLabelSelectedColor;
 
         SlidingTabStrip(Context context) {
             super(context);
             setWillNotDraw(false);
             mSelectedIndicatorPaint = new Paint();
+            mLabelPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
         }
 
         /**
@@ -1968,19 +3054,29 @@ public class XTabLayout extends HorizontalScrollView {
         public void setWidthText(boolean b) {
             if (xTabDividerWidthText != b) {
                 xTabDividerWidthText = b;
-                ViewCompat.postInvalidateOnAnimation(this);
+                updateIndicatorBounds();
+                invalidateIndicator();
             }
         }
 
         public void setSelectedIndicatorColor(int color) {
             if (mSelectedIndicatorPaint.getColor() != color) {
                 mSelectedIndicatorPaint.setColor(color);
-                ViewCompat.postInvalidateOnAnimation(this);
+                // 自定义样式可能画在整个移动范围里
+                mIndicatorDirtyRect.union(mIndicatorSpanRect);
+                mIndicatorDirtyRect.union(mIndicatorRect);
+                invalidateIndicator();
+                if (mIndicatorLayer != null) {
+                    mIndicatorLayer.invalidate();
+                }
             }
         }
 
         public void setSelectedIndicatorDrawable(Drawable drawable) {
             if (drawable != null && mSelectedIndicatorDrawable != drawable) {
+                // 位置不变也要重画
+                mIndicatorDirtyRect.union(mIndicatorSpanRect);
+                mIndicatorDirtyRect.union(mIndicatorRect);
                 mSelectedIndicatorDrawable = drawable;
                 if (mSelectedIndicatorDrawable.getIntrinsicHeight() > 0) {
                     mSelectedIndicatorHeight = mSelectedIndicatorDrawable.getIntrinsicHeight();
@@ -1988,22 +3084,27 @@ public class XTabLayout extends HorizontalScrollView {
                 if (mSelectedIndicatorDrawable.getIntrinsicWidth() > 0) {
                     mSelectedIndicatorWidth = mSelectedIndicatorDrawable.getIntrinsicWidth();
                 }
-                ViewCompat.postInvalidateOnAnimation(this);
+                updateIndicatorBounds();
+                invalidateIndicator();
+                if (mIndicatorLayer != null) {
+                    mIndicatorLayer.invalidate();
+                }
             }
         }
 
         public void setSelectedIndicatorHeight(int height) {
             if (mSelectedIndicatorHeight != height) {
                 mSelectedIndicatorHeight = height;
-                ViewCompat.postInvalidateOnAnimation(this);
+                updateIndicatorBounds();
+                invalidateIndicator();
             }
         }
 
         public void setSelectedIndicatorWidth(int width) {
             if (mSelectedIndicatorWidth != width) {
                 mSelectedIndicatorWidth = width;
-                ViewCompat.postInvalidateOnAnimation(this);
-
+                updateIndicatorBounds();
+                invalidateIndicator();
             }
         }
 
@@ -2011,140 +3112,715 @@ public class XTabLayout extends HorizontalScrollView {
             return mSelectedIndicatorWidth;
         }
 
-        boolean childrenNeedLayout() {
-            for (int i = 0, z = getChildCount(); i < z; i++) {
-                final View child = getChildAt(i);
-                if (child.getWidth() <= 0) {
-                    return true;
+        void setIndicatorRenderer(IndicatorRenderer renderer) {
+            if (mIndicatorRenderer != renderer) {
+                mIndicatorRenderer = renderer;
+                mIndicatorDirtyRect.union(mIndicatorSpanRect);
+                mIndicatorDirtyRect.union(mIndicatorRect);
+                mIndicatorSpanRect.setEmpty();
+                updateIndicatorBounds();
+                mIndicatorDirtyRect.union(mIndicatorRect);
+                invalidateIndicator();
+                if (mIndicatorLayer != null) {
+                    mIndicatorLayer.invalidate();
                 }
             }
-            return false;
         }
 
-        public void setIndicatorPositionFromTabPosition(int position, float positionOffset) {
-            if (mIndicatorAnimator != null && mIndicatorAnimator.isRunning()) {
-                mIndicatorAnimator.cancel();
-            }
-
-            mSelectedPosition = position;
-            mSelectionOffset = positionOffset;
-            updateIndicatorPosition();
+        IndicatorRenderer getIndicatorRenderer() {
+            return mIndicatorRenderer;
         }
 
-        public float getIndicatorPosition() {
-            return mSelectedPosition + mSelectionOffset;
+        @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+        void setIndicatorLayer(boolean layer) {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2
+                    || layer == (mIndicatorLayer != null)) {
+                return;
+            }
+            if (layer) {
+                mIndicatorLayer = new IndicatorLayer(getContext());
+                getOverlay().add(mIndicatorLayer);
+                updateIndicatorLayer(0, true);
+            } else {
+                mIndicatorLayerAnimating = false;
+                mIndicatorLayer.animate().cancel();
+                getOverlay().remove(mIndicatorLayer);
+                mIndicatorLayer = null;
+            }
+            invalidate();
         }
 
-        @Override
-        protected void onMeasure(final int widthMeasureSpec, final int heightMeasureSpec) {
-            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        boolean isIndicatorLayer() {
+            return mIndicatorLayer != null;
+        }
 
-            if (MeasureSpec.getMode(widthMeasureSpec) != MeasureSpec.EXACTLY) {
-                // HorizontalScrollView will first measure use with UNSPECIFIED, and then with
-                // EXACTLY. Ignore the first call since anything we do will be overwritten anyway
-                return;
+        void setIndicatorScrolling(boolean scrolling) {
+            if (mIndicatorScrolling != scrolling) {
+                mIndicatorScrolling = scrolling;
+                // 点击tab的动画还没结束的话，等动画结束再布局
+                if (!scrolling && mIndicatorLayer != null && !mIndicatorLayerAnimating) {
+                    updateIndicatorLayer(0, true);
+                }
             }
-            boolean remeasure = false;
-            boolean isAutoAndCenter = false;
-            if (mMode == MODE_AUTO) {
-                final int count = getChildCount();
-                // First we'll find the widest tab
-                int allTabWidth = 0;
-                for (int i = 0, z = count; i < z; i++) {
-                    View child = getChildAt(i);
-                    if (child.getVisibility() == VISIBLE) {
-                        allTabWidth += child.getMeasuredWidth();
-                    }
+        }
+
+        boolean childrenNeedLayout() {
+            if (mRecycle) {
+                return mTabWidthsDirty;
+            }
+            return mTabAddedSinceLayout || mZeroWidthTabCount > 0;
+        }
+
+        public void setIndicatorPositionFromTabPosition(int position, float positionOffset) {
+            mTabAnimator.cancelIndicator();
+
+            mSelectedPosition = position;
+            mSelectionOffset = positionOffset;
+            updateIndicatorPosition();
+        }
+
+        public float getIndicatorPosition() {
+            return mSelectedPosition + mSelectionOffset;
+        }
+
+        boolean isRecycle() {
+            return mRecycle;
+        }
+
+        boolean isCanvasMode() {
+            return mCanvasMode;
+        }
+
+        /**
+         * 非回收模式下添加了tab，View等到测量的时候再创建
+         * 批量修改时不请求布局，提交的时候统一布局
+         */
+        void onTabViewPending() {
+            mPendingTabViewCount++;
+            mTabEdgesDirty = true;
+            mTabAddedSinceLayout = true;
+            if (mBatchDepth == 0) {
+                requestLayout();
+            }
+        }
+
+        /**
+         * 按tab的顺序给还没有View的tab创建View，在测量的时候调用
+         */
+        private void bindPendingTabViews() {
+            if (mPendingTabViewCount == 0) {
+                return;
+            }
+            mPendingTabViewCount = 0;
+            for (int i = 0, z = mTabs.size(); i < z; i++) {
+                final Tab tab = mTabs.get(i);
+                if (tab.mView == null) {
+                    final TabView tabView = createTabView(tab);
+                    tab.mView = tabView;
+                    tabView.mIntrinsicWidth = -1;
+                    mIntrinsicDirtyTabs.add(tabView);
+                    // 前面的tab都有View了，下标就是tab的位置
+                    addViewInLayout(tabView, i, createLayoutParamsForTabs(), true);
+                    tabView.setSelected(tab == mSelectedViewTab);
                 }
+            }
+        }
 
-                if (allTabWidth < getMeasuredWidth()) {
-                    setGravity(Gravity.START);
-                    if (mTabGravity == GRAVITY_CENTER) {
-                        isAutoAndCenter = true;
-                    } else {
-                        for (int i = 0; i < count; i++) {
-                            final LayoutParams lp =
-                                    (LayoutParams) getChildAt(i).getLayoutParams();
-                            if (lp.width != 0 || lp.weight != 1) {
-                                lp.width = 0;
-                                lp.weight = count == 1 ? 0 : 1;
-                                remeasure = true;
-                            }
+        void removeTabView(View child) {
+            mTabEdgesDirty = true;
+            final TabView tabView = (TabView) child;
+            if (tabView.mIntrinsicWidth >= 0) {
+                removeIntrinsicWidth(tabView.mIntrinsicWidth);
+            } else {
+                mIntrinsicDirtyTabs.remove(tabView);
+            }
+            tabView.mIntrinsicWidth = -1;
+            if (mBatchDepth > 0) {
+                removeViewInLayout(child);
+            } else {
+                removeView(child);
+            }
+        }
+
+        /**
+         * tab的内容变了，原始宽度失效，从总宽度里减掉，下次测量的时候再加上
+         */
+        void invalidateIntrinsicWidth(TabView child) {
+            if (!mRecycle && child.getParent() == this) {
+                removeIntrinsicWidth(child.mIntrinsicWidth);
+                mIntrinsicDirtyTabs.add(child);
+            }
+            child.mIntrinsicWidth = -1;
+        }
+
+        private void removeIntrinsicWidth(int width) {
+            mIntrinsicTotalWidth -= width;
+            if (width >= mIntrinsicLargestWidth) {
+                mIntrinsicLargestDirty = true;
+            }
+        }
+
+        /**
+         * 切换回收模式和直接画文字模式，关闭回收时给所有tab重新创建View
+         */
+        void setRecycle(boolean recycle, boolean canvasMode) {
+            if (mRecycle == recycle && mCanvasMode == canvasMode) {
+                return;
+            }
+            mRecycle = recycle;
+            if (mCanvasMode && !canvasMode) {
+                // 不画文字了，排版缓存也不要了
+                for (int i = 0, z = mTabs.size(); i < z; i++) {
+                    mTabs.get(i).mLabelLayout = null;
+                }
+            }
+            mCanvasMode = canvasMode;
+            mLabelSwipePosition = Tab.INVALID_POSITION;
+            mTouchTabIndex = -1;
+            mIntrinsicWidthsDirty = true;
+            mIntrinsicDirtyTabs.clear();
+            for (int i = getChildCount() - 1; i >= 0; i--) {
+                final TabView child = (TabView) getChildAt(i);
+                removeViewAt(i);
+                recycleTabView(child);
+            }
+            if (recycle) {
+                mPendingTabViewCount = 0;
+                mTabWidths = new int[mTabs.size()];
+                invalidateTabWidths();
+            } else {
+                // 测量的时候再给所有tab创建View
+                mPendingTabViewCount = mTabs.size();
+                mTabEdgesDirty = true;
+                mTabAddedSinceLayout = true;
+            }
+            requestLayout();
+        }
+
+        private void recycleTabView(TabView view) {
+            final Tab tab = view.getTab();
+            if (tab != null) {
+                tab.mView = null;
+            }
+            view.reset();
+            mTabViewPool.release(view);
+        }
+
+        void onTabInserted(int position) {
+            final int[] widths = new int[mTabWidths.length + 1];
+            System.arraycopy(mTabWidths, 0, widths, 0, position);
+            System.arraycopy(mTabWidths, position, widths, position + 1, mTabWidths.length - position);
+            widths[position] = -1;
+            mTabWidths = widths;
+            mTabWidthsDirty = true;
+            if (mBatchDepth == 0) {
+                requestLayout();
+            }
+        }
+
+        void onTabRemoved(int position) {
+            final TabView view = mTabs.get(position).mView;
+            if (view != null) {
+                removeTabView(view);
+                recycleTabView(view);
+            }
+            final int[] widths = new int[mTabWidths.length - 1];
+            System.arraycopy(mTabWidths, 0, widths, 0, position);
+            System.arraycopy(mTabWidths, position + 1, widths, position, widths.length - position);
+            mTabWidths = widths;
+            mTabWidthsDirty = true;
+        }
+
+        void invalidateTabWidth(int position) {
+            if (mRecycle && position >= 0 && position < mTabWidths.length) {
+                mTabWidths[position] = -1;
+                mTabWidthsDirty = true;
+                requestLayout();
+            }
+        }
+
+        void invalidateTabWidths() {
+            if (mRecycle) {
+                Arrays.fill(mTabWidths, -1);
+                mTabWidthsDirty = true;
+                requestLayout();
+            }
+        }
+
+        int getTabLeft(int position) {
+            if (!mRecycle && mTabEdgesDirty) {
+                // 还没有重新布局，直接读子View
+                final View child = getTabViewAt(position);
+                return child != null ? child.getLeft() : 0;
+            }
+            return position >= 0 && position < mTabLefts.length - 1 ? mTabLefts[position] : 0;
+        }
+
+        private View getTabViewAt(int position) {
+            return position >= 0 && position < mTabs.size() ? mTabs.get(position).mView : null;
+        }
+
+        int getTabRight(int position) {
+            return getTabLeft(position) + getTabWidth(position);
+        }
+
+        int getTabWidth(int position) {
+            if (!mRecycle && mTabEdgesDirty) {
+                final View child = getTabViewAt(position);
+                return child != null ? child.getWidth() : 0;
+            }
+            return position >= 0 && position < mTabWidths.length
+                    ? Math.max(0, mTabWidths[position]) : 0;
+        }
+
+        /**
+         * 二分查找x所在的tab
+         *
+         * @return 左边小于等于x的最后一个tab，没有tab时返回-1
+         */
+        int findTabIndex(int x) {
+            final int count = Math.min(mTabWidths.length, mTabLefts.length - 1);
+            if (count <= 0) {
+                return -1;
+            }
+            int low = 0;
+            int high = count - 1;
+            while (low < high) {
+                final int mid = (low + high + 1) >>> 1;
+                if (mTabLefts[mid] <= x) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * 非回收模式下，布局完成后从子View重建每个tab的位置
+         */
+        private void rebuildTabEdges() {
+            final int count = getChildCount();
+            if (mTabWidths.length != count) {
+                mTabWidths = new int[count];
+            }
+            if (mTabLefts.length != count + 1) {
+                mTabLefts = new int[count + 1];
+            }
+            int zeroWidthCount = 0;
+            int right = getPaddingLeft();
+            for (int i = 0; i < count; i++) {
+                final View child = getChildAt(i);
+                mTabLefts[i] = child.getLeft();
+                mTabWidths[i] = child.getWidth();
+                if (mTabWidths[i] <= 0) {
+                    zeroWidthCount++;
+                }
+                right = child.getRight();
+            }
+            mTabLefts[count] = right;
+            mZeroWidthTabCount = zeroWidthCount;
+            // 测量之后又添加的tab还没有View，等下次布局
+            mTabEdgesDirty = mPendingTabViewCount > 0;
+            mTabAddedSinceLayout = mPendingTabViewCount > 0;
+        }
+
+        /**
+         * 回收模式下的测量，只测量宽度变了的tab，没有View的用一个临时View测量
+         */
+        private void measureRecycleTabs(int widthMeasureSpec, int heightMeasureSpec) {
+            final int count = mTabs.size();
+            final int childWidthMeasureSpec = MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
+            final int childHeightMeasureSpec = getChildMeasureSpec(heightMeasureSpec,
+                    getPaddingTop() + getPaddingBottom(), LayoutParams.MATCH_PARENT);
+            if (mTabLefts.length != count + 1) {
+                mTabLefts = new int[count + 1];
+            }
+            final int dividerWidth = getTabDividerWidth();
+            int maxHeight = mCanvasMode ? prepareLabels() : 0;
+            int left = getPaddingLeft();
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    left += dividerWidth;
+                }
+                if (mTabWidths[i] < 0 && mCanvasMode) {
+                    mTabWidths[i] = measureLabel(mTabs.get(i));
+                } else if (mTabWidths[i] < 0) {
+                    final Tab tab = mTabs.get(i);
+                    TabView view = tab.mView;
+                    if (view == null) {
+                        if (mMeasureTabView == null) {
+                            mMeasureTabView = new TabView(getContext(), XTabLayout.this);
                         }
+                        view = mMeasureTabView;
+                        view.setMinimumWidth(getTabMinWidth());
+                        view.setTab(tab);
+                        view.setSelected(tab == mSelectedViewTab);
                     }
-                } else if (allTabWidth > getMeasuredWidth()) {
-                    setGravity(Gravity.START);
-                    for (int i = 0; i < count; i++) {
-                        final LayoutParams lp =
-                                (LayoutParams) getChildAt(i).getLayoutParams();
-                        if (lp.width != LinearLayout.LayoutParams.WRAP_CONTENT || lp.weight != 0) {
-                            lp.width = LinearLayout.LayoutParams.WRAP_CONTENT;
-                            lp.weight = 0;
-                            remeasure = true;
-                        }
+                    view.measure(childWidthMeasureSpec, childHeightMeasureSpec);
+                    mTabWidths[i] = view.getMeasuredWidth();
+                    maxHeight = Math.max(maxHeight, view.getMeasuredHeight());
+                    if (view == mMeasureTabView) {
+                        view.reset();
                     }
                 }
+                mTabLefts[i] = left;
+                left += mTabWidths[i];
+            }
+            mTabLefts[count] = left;
+            mTabWidthsDirty = false;
+            setMeasuredDimension(resolveSize(left + getPaddingRight(), widthMeasureSpec),
+                    resolveSize(maxHeight + getPaddingTop() + getPaddingBottom(), heightMeasureSpec));
+        }
+
+        /**
+         * 直接画文字时，按现在的样式设置画笔，样式变了清掉所有文字排版
+         *
+         * @return tab的高度
+         */
+        private int prepareLabels() {
+            final float textSize = Math.max(mTabTextSize, mTabSelectedTextSize);
+            final int maxWidth = getTabMaxWidth();
+            if (textSize != mLabelTextSize || xTabTextAllCaps != mLabelAllCaps
+                    || maxWidth != mLabelMaxWidth) {
+                mLabelTextSize = textSize;
+                mLabelAllCaps = xTabTextAllCaps;
+                mLabelMaxWidth = maxWidth;
+                mLabelPaint.setTextSize(textSize);
+                mLabelPaint.density = mDensity;
+                for (int i = 0, z = mTabs.size(); i < z; i++) {
+                    mTabs.get(i).mLabelLayout = null;
+                }
+            }
+            final ColorStateList textColors = mTabTextColors != null
+                    ? mTabTextColors : mTabAppearanceTextColors;
+            mLabelNormalColor = textColors != null ? textColors.getDefaultColor() : Color.BLACK;
+            mLabelSelectedColor = textColors != null
+                    ? textColors.getColorForState(SELECTED_STATE_SET, mLabelNormalColor) : mLabelNormalColor;
+            return mTabPaddingTop + mLabelPaint.getFontMetricsInt(null) + mTabPaddingBottom;
+        }
+
+        /**
+         * 直接画文字时测量tab的宽度，顺便创建好文字排版
+         */
+        private int measureLabel(Tab tab) {
+            final Layout layout = getLabelLayout(tab);
+            final int textWidth = layout != null ? layout.getWidth() : 0;
+            return Math.max(getTabMinWidth(), textWidth + mTabPaddingStart + mTabPaddingEnd);
+        }
 
+        /**
+         * tab文字的排版，一行的用BoringLayout，放不下的省略
+         */
+        private Layout getLabelLayout(Tab tab) {
+            if (tab.mLabelLayout != null) {
+                return tab.mLabelLayout;
+            }
+            CharSequence text = tab.getText();
+            if (TextUtils.isEmpty(text)) {
+                return null;
+            }
+            if (xTabTextAllCaps) {
+                text = text.toString().toUpperCase(Locale.getDefault());
             }
+            final int maxWidth = mLabelMaxWidth - mTabPaddingStart - mTabPaddingEnd;
+            float width = Layout.getDesiredWidth(text, mLabelPaint);
+            if (mLabelMaxWidth > 0 && maxWidth > 0 && width > maxWidth) {
+                text = TextUtils.ellipsize(text, mLabelPaint, maxWidth, TextUtils.TruncateAt.END);
+                width = Layout.getDesiredWidth(text, mLabelPaint);
+            }
+            final int layoutWidth = (int) Math.ceil(width);
+            final BoringLayout.Metrics boring = BoringLayout.isBoring(text, mLabelPaint, mBoringMetrics);
+            if (boring != null) {
+                tab.mLabelLayout = BoringLayout.make(text, mLabelPaint, layoutWidth,
+                        Layout.Alignment.ALIGN_NORMAL, 1f, 0f, boring, false);
+            } else {
+                tab.mLabelLayout = new StaticLayout(text, mLabelPaint, layoutWidth,
+                        Layout.Alignment.ALIGN_NORMAL, 1f, 0f, false);
+            }
+            return tab.mLabelLayout;
+        }
 
-            if (isAutoAndCenter || (mMode == MODE_FIXED && mTabGravity == GRAVITY_CENTER)) {
-                final int count = getChildCount();
+        /**
+         * 直接画文字时看到的文字宽度，选中的按选中的字号算
+         */
+        int getLabelWidth(Tab tab) {
+            final Layout layout = tab.mLabelLayout;
+            if (layout == null || mLabelTextSize <= 0) {
+                return 0;
+            }
+            final float textSize = tab == mSelectedViewTab ? mTabSelectedTextSize : mTabTextSize;
+            return Math.round(layout.getLineWidth(0) * textSize / mLabelTextSize);
+        }
 
-                // First we'll find the widest tab
-                int largestTabWidth = 0;
-                for (int i = 0, z = count; i < z; i++) {
-                    View child = getChildAt(i);
-                    if (child.getVisibility() == VISIBLE) {
-                        largestTabWidth = Math.max(largestTabWidth, child.getMeasuredWidth());
-                    }
+        /**
+         * 选中的tab变了，直接画文字时只重画有变化的tab
+         */
+        void onSelectedTabChanged(int oldPosition, int position) {
+            if (mCanvasMode) {
+                if (mLabelSwipePosition >= 0) {
+                    invalidateLabel(mLabelSwipePosition);
+                    invalidateLabel(mLabelSwipePosition + 1);
+                    mLabelSwipePosition = Tab.INVALID_POSITION;
+                }
+                invalidateLabel(oldPosition);
+                invalidateLabel(position);
+            }
+        }
+
+        /**
+         * 缩放模式下滑动时，position和后面一个tab的文字大小跟着渐变
+         */
+        void setLabelSwipe(int position, float positionOffset) {
+            if (mLabelSwipePosition != position || mLabelSwipeOffset != positionOffset) {
+                if (mLabelSwipePosition != position) {
+                    invalidateLabel(mLabelSwipePosition);
+                    invalidateLabel(mLabelSwipePosition + 1);
                 }
+                mLabelSwipePosition = position;
+                mLabelSwipeOffset = positionOffset;
+                invalidateLabel(position);
+                invalidateLabel(position + 1);
+            }
+        }
+
+        private void invalidateLabel(int position) {
+            if (position < 0 || position >= mTabWidths.length || mTabWidthsDirty) {
+                return;
+            }
+            ViewCompat.postInvalidateOnAnimation(this, mTabLefts[position], 0,
+                    mTabLefts[position] + mTabWidths[position], getHeight());
+        }
+
+        private float getLabelSelectedFraction(int position, boolean selected) {
+            if (mLabelSwipePosition == position) {
+                return 1f - mLabelSwipeOffset;
+            }
+            if (mLabelSwipePosition >= 0 && mLabelSwipePosition + 1 == position) {
+                return mLabelSwipeOffset;
+            }
+            return selected ? 1f : 0f;
+        }
+
+        /**
+         * 回收模式下，只保留可见范围内的tab View，其他的回收到池子里
+         */
+        void fillVisibleTabs() {
+            if (!mRecycle || mCanvasMode || mTabWidthsDirty) {
+                // 等测量完了再添加，直接画文字时没有View
+                return;
+            }
+            final int count = mTabs.size();
+            final int scrollX = XTabLayout.this.getScrollX();
+            final int viewportWidth = XTabLayout.this.getWidth() > 0
+                    ? XTabLayout.this.getWidth()
+                    : mDisplayWidth;
+            int first = 0;
+            int last = -1;
+            if (count > 0) {
+                first = findTabIndex(scrollX);
+                last = findTabIndex(scrollX + viewportWidth - 1);
+                // 两边各多留一个，滑动的时候不会闪
+                first = Math.max(0, first - 1);
+                last = Math.min(count - 1, last + 1);
+            }
 
-                if (largestTabWidth <= 0) {
-                    // If we don't have a largest child yet, skip until the next measure pass
-                    return;
+            for (int i = getChildCount() - 1; i >= 0; i--) {
+                final TabView child = (TabView) getChildAt(i);
+                final int position = child.getTab() != null
+                        ? child.getTab().getPosition() : Tab.INVALID_POSITION;
+                if (position < first || position > last) {
+                    removeViewInLayout(child);
+                    recycleTabView(child);
                 }
+            }
 
-                final int gutter = dpToPx(FIXED_WRAP_GUTTER_MIN);
+            final int childHeight = getHeight() - getPaddingTop() - getPaddingBottom();
+            final int childHeightMeasureSpec = MeasureSpec.makeMeasureSpec(childHeight, MeasureSpec.EXACTLY);
+            boolean selectedAttached = false;
+            for (int i = first; i <= last; i++) {
+                final Tab tab = mTabs.get(i);
+                TabView view = tab.mView;
+                if (view == null) {
+                    view = tab.mView = createTabView(tab);
+                    addViewInLayout(view, -1, createLayoutParamsForTabs(), true);
+                    view.setSelected(tab == mSelectedViewTab);
+                    selectedAttached |= i == mSelectedPosition;
+                }
+                final int width = mTabWidths[i];
+                if (view.isLayoutRequested() || view.getMeasuredWidth() != width
+                        || view.getMeasuredHeight() != childHeight) {
+                    view.measure(MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY),
+                            childHeightMeasureSpec);
+                }
+                view.layout(mTabLefts[i], getPaddingTop(), mTabLefts[i] + width,
+                        getPaddingTop() + childHeight);
+            }
+            if (selectedAttached && !mTabAnimator.isIndicatorRunning()) {
+                // 指示器宽度和文字有关，选中的tab有View了再算一次
+                updateIndicatorPosition();
+            }
+        }
 
-                if (largestTabWidth * count <= getMeasuredWidth() - gutter * 2) {
-                    // If the tabs fit within our width minus gutters, we will set all tabs to have
-                    // the same width
+        /**
+         * 非回收模式的测量，先拿到每个tab的原始宽度（有缓存），再一次算出最终宽度
+         * 每个tab最多再测量一次，不会修改mTabGravity等配置
+         */
+        private void measureTabs(int widthMeasureSpec, int heightMeasureSpec) {
+            bindPendingTabViews();
+            final int count = getChildCount();
+            final int childHeightMeasureSpec = getChildMeasureSpec(heightMeasureSpec,
+                    getPaddingTop() + getPaddingBottom(), LayoutParams.MATCH_PARENT);
+            final boolean keyChanged = childHeightMeasureSpec != mIntrinsicHeightSpec
+                    || mTabMaxWidth != mIntrinsicTabMaxWidth;
+            mIntrinsicHeightSpec = childHeightMeasureSpec;
+            mIntrinsicTabMaxWidth = mTabMaxWidth;
+            final int unspecified = MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
+            if (keyChanged || mIntrinsicWidthsDirty) {
+                int totalWidth = 0;
+                int largestWidth = 0;
+                for (int i = 0; i < count; i++) {
+                    final TabView child = (TabView) getChildAt(i);
+                    if (keyChanged || child.mIntrinsicWidth < 0) {
+                        child.measure(unspecified, childHeightMeasureSpec);
+                        child.mIntrinsicWidth = child.getMeasuredWidth();
+                    }
+                    totalWidth += child.mIntrinsicWidth;
+                    largestWidth = Math.max(largestWidth, child.mIntrinsicWidth);
+                }
+                mIntrinsicTotalWidth = totalWidth;
+                mIntrinsicLargestWidth = largestWidth;
+                mIntrinsicLargestDirty = false;
+                mIntrinsicWidthsDirty = false;
+                mIntrinsicDirtyTabs.clear();
+            } else {
+                // 只测量内容变了的tab，总宽度和最大宽度在原来的基础上更新
+                for (int i = 0, z = mIntrinsicDirtyTabs.size(); i < z; i++) {
+                    final TabView child = mIntrinsicDirtyTabs.get(i);
+                    child.measure(unspecified, childHeightMeasureSpec);
+                    child.mIntrinsicWidth = child.getMeasuredWidth();
+                    mIntrinsicTotalWidth += child.mIntrinsicWidth;
+                    mIntrinsicLargestWidth = Math.max(mIntrinsicLargestWidth, child.mIntrinsicWidth);
+                }
+                mIntrinsicDirtyTabs.clear();
+                if (mIntrinsicLargestDirty) {
+                    // 最宽的tab变窄或者被删了，才需要重新找最大的
+                    int largestWidth = 0;
                     for (int i = 0; i < count; i++) {
-                        final LayoutParams lp =
-                                (LayoutParams) getChildAt(i).getLayoutParams();
-                        if (lp.width != largestTabWidth || lp.weight != 0) {
-                            lp.width = largestTabWidth;
-                            lp.weight = 0;
-                            remeasure = true;
-                        }
+                        largestWidth = Math.max(largestWidth, ((TabView) getChildAt(i)).mIntrinsicWidth);
                     }
+                    mIntrinsicLargestWidth = largestWidth;
+                    mIntrinsicLargestDirty = false;
+                }
+            }
+            final int totalWidth = mIntrinsicTotalWidth;
+            final int largestWidth = mIntrinsicLargestWidth;
+            final int dividerWidth = getTabDividerWidth();
+            final int padding = getPaddingLeft() + getPaddingRight() + (count > 1 ? dividerWidth * (count - 1) : 0);
+            final int measuredWidth = resolveSize(totalWidth + padding, widthMeasureSpec);
+            final int availableWidth = measuredWidth - padding;
+
+            // HorizontalScrollView会先用UNSPECIFIED测量，这时候都用原始宽度
+            boolean sameWidth = false;
+            boolean fill = false;
+            if (MeasureSpec.getMode(widthMeasureSpec) == MeasureSpec.EXACTLY && count > 0) {
+                final boolean center;
+                if (mMode == MODE_FIXED) {
+                    center = mTabGravity == GRAVITY_CENTER;
+                    fill = !center;
+                } else if (mMode == MODE_AUTO && totalWidth < availableWidth) {
+                    center = mTabGravity == GRAVITY_CENTER;
+                    fill = !center && count > 1;
                 } else {
-                    // If the tabs will wrap to be larger than the width minus gutters, we need
-                    // to switch to GRAVITY_FILL
-                    mTabGravity = GRAVITY_FILL;
-                    updateTabViews(false);
-                    remeasure = true;
+                    center = false;
+                }
+                if (center && largestWidth > 0) {
+                    final int gutter = dpToPx(FIXED_WRAP_GUTTER_MIN);
+                    // 放得下就一样宽，放不下就平分，只影响这一次测量
+                    sameWidth = largestWidth * count <= measuredWidth - gutter * 2;
+                    fill = !sameWidth;
                 }
+            }
 
+            int remainingWidth = availableWidth;
+            int maxHeight = 0;
+            for (int i = 0; i < count; i++) {
+                final TabView child = (TabView) getChildAt(i);
+                final int width;
+                if (fill) {
+                    width = remainingWidth / (count - i);
+                    remainingWidth -= width;
+                } else {
+                    width = sameWidth ? largestWidth : child.mIntrinsicWidth;
+                }
+                if (child.getMeasuredWidth() != width) {
+                    child.measure(MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY),
+                            childHeightMeasureSpec);
+                }
+                maxHeight = Math.max(maxHeight, child.getMeasuredHeight());
             }
-            if (remeasure) {
-                // Now re-measure after our changes
-                super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+            setMeasuredDimension(measuredWidth,
+                    resolveSize(maxHeight + getPaddingTop() + getPaddingBottom(), heightMeasureSpec));
+        }
+
+        /**
+         * 非回收模式的布局，FIXED模式居中，其他从开始的位置排列
+         */
+        private void layoutTabs() {
+            final int count = getChildCount();
+            final int dividerWidth = getTabDividerWidth();
+            int contentWidth = count > 1 ? dividerWidth * (count - 1) : 0;
+            for (int i = 0; i < count; i++) {
+                contentWidth += getChildAt(i).getMeasuredWidth();
+            }
+            final boolean isRtl = ViewCompat.getLayoutDirection(this) == ViewCompat.LAYOUT_DIRECTION_RTL;
+            int left;
+            if (mMode == MODE_FIXED) {
+                left = getPaddingLeft()
+                        + (getWidth() - getPaddingLeft() - getPaddingRight() - contentWidth) / 2;
+            } else if (isRtl) {
+                left = getWidth() - getPaddingRight() - contentWidth;
+            } else {
+                left = getPaddingLeft();
+            }
+            final int top = getPaddingTop();
+            for (int i = 0; i < count; i++) {
+                final View child = getChildAt(isRtl ? count - 1 - i : i);
+                child.layout(left, top, left + child.getMeasuredWidth(), top + child.getMeasuredHeight());
+                left += child.getMeasuredWidth() + dividerWidth;
             }
         }
 
+        /**
+         * 两个tab之间分割线的宽度
+         */
+        private int getTabDividerWidth() {
+            final Drawable divider = getDividerDrawable();
+            return divider != null && (getShowDividers() & SHOW_DIVIDER_MIDDLE) != 0
+                    ? divider.getIntrinsicWidth() : 0;
+        }
+
         @Override
-        protected void onLayout(boolean changed, int l, int t, int r, int b) {
-            super.onLayout(changed, l, t, r, b);
+        protected void onMeasure(final int widthMeasureSpec, final int heightMeasureSpec) {
+            if (mRecycle) {
+                measureRecycleTabs(widthMeasureSpec, heightMeasureSpec);
+                return;
+            }
+            measureTabs(widthMeasureSpec, heightMeasureSpec);
+        }
 
-            if (mIndicatorAnimator != null && mIndicatorAnimator.isRunning()) {
-                // If we're currently running an animation, lets cancel it and start a
-                // new animation with the remaining duration
-                mIndicatorAnimator.cancel();
-                final long duration = mIndicatorAnimator.getDuration();
+        @Override
+        protected void onLayout(boolean changed, int l, int t, int r, int b) {
+            if (mRecycle) {
+                fillVisibleTabs();
+            } else {
+                layoutTabs();
+                rebuildTabEdges();
+            }
 
-                animateIndicatorToPosition(mSelectedPosition,
-                        Math.round((1f - mIndicatorAnimator.getAnimatedFraction()) * duration));
+            if (mTabAnimator.isIndicatorRunning()) {
+                // 动画还在跑，按新的tab位置接着动
+                setIndicatorAnimationFraction(mAnimationFraction);
             } else {
                 // If we've been layed out, update the indicator position
                 updateIndicatorPosition();
@@ -2152,32 +3828,15 @@ public class XTabLayout extends HorizontalScrollView {
         }
 
         public void updateIndicatorPosition() {
-            final View selectedTitle = getChildAt(mSelectedPosition);
             int left, right;
-            if (selectedTitle != null && selectedTitle.getWidth() > 0) {
-                left = selectedTitle.getLeft();
-                right = selectedTitle.getRight();
-
-                int haftWidth = 0;
-                if (xTabDividerWidthText) {
-                    mSelectedIndicatorWidth = mSelectedTab.getTextWidth();
-                } else if (mSelectedIndicatorWidth == 0) {
-                    mSelectedIndicatorWidth = maxWidth;
-                }
-                if (mSelectedIndicatorWidth != 0) {
-                    int maxWidth = mIndicatorRight - mIndicatorLeft;
-                    if (maxWidth > mSelectedIndicatorWidth) {
-                        haftWidth = (maxWidth - mSelectedIndicatorWidth) / 2;
-                        left += haftWidth;
-                        right -= haftWidth;
-                    }
-                }
+            if (getTabWidth(mSelectedPosition) > 0) {
+                left = getTabLeft(mSelectedPosition);
+                right = getTabRight(mSelectedPosition);
 
-                if (mSelectionOffset > 0f && mSelectedPosition < getChildCount() - 1) {
+                if (mSelectionOffset > 0f && mSelectedPosition < getTabCount() - 1) {
                     // Draw the selection partway between the tabs
-                    View nextTitle = getChildAt(mSelectedPosition + 1);
-                    int nextLeft = nextTitle.getLeft() + haftWidth;
-                    int nextRight = nextTitle.getRight() - haftWidth;
+                    int nextLeft = getTabLeft(mSelectedPosition + 1);
+                    int nextRight = getTabRight(mSelectedPosition + 1);
                     left = (int) (mSelectionOffset * nextLeft +
                             (1.0f - mSelectionOffset) * left);
                     right = (int) (mSelectionOffset * nextRight +
@@ -2193,32 +3852,189 @@ public class XTabLayout extends HorizontalScrollView {
         private void setIndicatorPosition(int left, int right) {
             left = left + mTabPaddingStart;
             right = right - mTabPaddingEnd;
-            if (left != mIndicatorLeft || right != mIndicatorRight) {
-                // If the indicator's left/right has changed, invalidate
-                mIndicatorLeft = left;
-                mIndicatorRight = right;
-                ViewCompat.postInvalidateOnAnimation(this);
+            mIndicatorLeft = left;
+            mIndicatorRight = right;
+            if (updateIndicatorBounds()) {
+                // If the indicator's bounds has changed, invalidate
+                invalidateIndicator();
+            }
+        }
+
+        /**
+         * 根据指示器的左右位置算出最终画的区域，宽度固定或者和文字一样宽的时候居中
+         *
+         * @return 区域是否变化了
+         */
+        private boolean updateIndicatorBounds() {
+            final int oldLeft = mIndicatorRect.left;
+            final int oldTop = mIndicatorRect.top;
+            final int oldRight = mIndicatorRect.right;
+            final int oldBottom = mIndicatorRect.bottom;
+            int left = mIndicatorLeft;
+            int right = mIndicatorRight;
+            if (left >= 0 && right > left) {
+                final int width = getIndicatorContentWidth();
+                final int maxWidth = right - left;
+                if (width > 0 && maxWidth > width) {
+                    left += (maxWidth - width) / 2;
+                    right -= (maxWidth - width) / 2;
+                }
+                mIndicatorRect.set(left, getHeight() - mSelectedIndicatorHeight, right, getHeight());
+            } else {
+                mIndicatorRect.setEmpty();
             }
+            if (mSelectedIndicatorDrawable != null) {
+                mSelectedIndicatorDrawable.setBounds(mIndicatorRect);
+            }
+            if (mIndicatorRenderer != null) {
+                return updateIndicatorTransition();
+            }
+            if (oldLeft != mIndicatorRect.left || oldTop != mIndicatorRect.top
+                    || oldRight != mIndicatorRect.right || oldBottom != mIndicatorRect.bottom) {
+                mIndicatorDirtyRect.union(oldLeft, oldTop, oldRight, oldBottom);
+                mIndicatorDirtyRect.union(mIndicatorRect);
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * 算出这次移动开始和结束时指示器的左右，给{@link IndicatorRenderer}用
+         * 重画的范围是上次和这次移动经过的范围
+         *
+         * @return 是否需要重画
+         */
+        private boolean updateIndicatorTransition() {
+            final int startLeft = mIndicatorStartLeft;
+            final int startRight = mIndicatorStartRight;
+            final int endLeft = mIndicatorEndLeft;
+            final int endRight = mIndicatorEndRight;
+            final float progress = mIndicatorProgress;
+            if (mIndicatorRect.isEmpty()) {
+                mIndicatorStartLeft = mIndicatorEndLeft = 0;
+                mIndicatorStartRight = mIndicatorEndRight = 0;
+                mIndicatorProgress = 0f;
+            } else if (mAnimationTargetPosition >= 0) {
+                setIndicatorTransition(mAnimationStartLeft + mTabPaddingStart,
+                        mAnimationStartRight - mTabPaddingEnd, getIndicatorContentWidth(mSelectedPosition),
+                        mAnimationTargetPosition, mAnimationFraction);
+            } else if (mSelectionOffset > 0f && mSelectedPosition < getTabCount() - 1) {
+                setIndicatorTransition(getTabLeft(mSelectedPosition) + mTabPaddingStart,
+                        getTabRight(mSelectedPosition) - mTabPaddingEnd, getIndicatorContentWidth(mSelectedPosition),
+                        mSelectedPosition + 1, mSelectionOffset);
+            } else {
+                mIndicatorStartLeft = mIndicatorEndLeft = mIndicatorRect.left;
+                mIndicatorStartRight = mIndicatorEndRight = mIndicatorRect.right;
+                mIndicatorProgress = 0f;
+            }
+            if (startLeft == mIndicatorStartLeft && startRight == mIndicatorStartRight
+                    && endLeft == mIndicatorEndLeft && endRight == mIndicatorEndRight
+                    && progress == mIndicatorProgress && mIndicatorSpanRect.top == mIndicatorRect.top
+                    && mIndicatorSpanRect.bottom == mIndicatorRect.bottom) {
+                return false;
+            }
+            mIndicatorDirtyRect.union(mIndicatorSpanRect);
+            if (mIndicatorRect.isEmpty()) {
+                mIndicatorSpanRect.setEmpty();
+            } else {
+                mIndicatorSpanRect.set(Math.min(mIndicatorStartLeft, mIndicatorEndLeft), mIndicatorRect.top,
+                        Math.max(mIndicatorStartRight, mIndicatorEndRight), mIndicatorRect.bottom);
+                mIndicatorSpanRect.union(mIndicatorRect);
+                mIndicatorDirtyRect.union(mIndicatorSpanRect);
+            }
+            return true;
+        }
+
+        /**
+         * 开始的位置已经加了tab的内边距，结束的位置是position的tab，都按指示器宽度居中
+         */
+        private void setIndicatorTransition(int startLeft, int startRight, int startWidth,
+                                            int position, float progress) {
+            final int endLeft = getTabLeft(position) + mTabPaddingStart;
+            final int endRight = getTabRight(position) - mTabPaddingEnd;
+            final int startInset = getIndicatorInset(startLeft, startRight, startWidth);
+            final int endInset = getIndicatorInset(endLeft, endRight, getIndicatorContentWidth(position));
+            mIndicatorStartLeft = startLeft + startInset;
+            mIndicatorStartRight = startRight - startInset;
+            mIndicatorEndLeft = endLeft + endInset;
+            mIndicatorEndRight = endRight - endInset;
+            mIndicatorProgress = progress;
+        }
+
+        /**
+         * 指示器宽度比left到right窄的时候，两边要缩进的距离
+         */
+        private int getIndicatorInset(int left, int right, int width) {
+            final int maxWidth = right - left;
+            return width > 0 && maxWidth > width ? (maxWidth - width) / 2 : 0;
         }
 
-        void animateIndicatorToPosition(final int position, int duration) {
+        /**
+         * 指示器停在position时的宽度，0表示和tab一样宽
+         */
+        private int getIndicatorContentWidth(int position) {
+            return xTabDividerWidthText ? getTabTextWidth(position) : mSelectedIndicatorWidth;
+        }
 
-            if (mIndicatorAnimator != null && mIndicatorAnimator.isRunning()) {
-                mIndicatorAnimator.cancel();
+        /**
+         * 只重画指示器经过的区域，其他tab的内容不用重画
+         * 指示器在浮层上的时候只移动浮层，strip不用重画
+         */
+        private void invalidateIndicator() {
+            if (mIndicatorLayer != null) {
+                mIndicatorDirtyRect.setEmpty();
+                updateIndicatorLayer(0, !mIndicatorScrolling && mAnimationTargetPosition < 0);
+                return;
+            }
+            if (!mIndicatorDirtyRect.isEmpty()) {
+                ViewCompat.postInvalidateOnAnimation(this, mIndicatorDirtyRect.left, mIndicatorDirtyRect.top,
+                        mIndicatorDirtyRect.right, mIndicatorDirtyRect.bottom);
+                mIndicatorDirtyRect.setEmpty();
             }
+        }
+
+        /**
+         * 指示器的宽度，0表示和tab一样宽
+         */
+        private int getIndicatorContentWidth() {
+            if (!xTabDividerWidthText) {
+                return mSelectedIndicatorWidth;
+            }
+            final int width = getTabTextWidth(mSelectedPosition);
+            if (mAnimationTargetPosition >= 0) {
+                return AnimationUtils.lerp(width, getTabTextWidth(mAnimationTargetPosition),
+                        mAnimationFraction);
+            }
+            if (mSelectionOffset > 0f && mSelectedPosition < getTabCount() - 1) {
+                return AnimationUtils.lerp(width, getTabTextWidth(mSelectedPosition + 1),
+                        mSelectionOffset);
+            }
+            return width;
+        }
+
+        private int getTabTextWidth(int position) {
+            return position >= 0 && position < mTabs.size() ? mTabs.get(position).getTextWidth() : 0;
+        }
+
+        /**
+         * 记下指示器动画的开始位置，由{@link TabAnimator}每帧更新
+         *
+         * @return 是否需要动画
+         */
+        boolean prepareIndicatorAnimation(int position) {
+            mTabAnimator.cancelIndicator();
 
             final boolean isRtl = ViewCompat.getLayoutDirection(this)
                     == ViewCompat.LAYOUT_DIRECTION_RTL;
 
-            final View targetView = getChildAt(position);
-            if (targetView == null) {
+            if (position < 0 || position >= getTabCount()) {
                 // If we don't have a view, just update the position now and return
                 updateIndicatorPosition();
-                return;
+                return false;
             }
 
-            final int targetLeft = targetView.getLeft();
-            final int targetRight = targetView.getRight();
+            final int targetLeft = getTabLeft(position);
+            final int targetRight = getTabRight(position);
             final int startLeft;
             final int startRight;
 
@@ -2246,28 +4062,214 @@ public class XTabLayout extends HorizontalScrollView {
                 }
             }
 
-            if (startLeft != targetLeft || startRight != targetRight) {
-                ValueAnimator animator = mIndicatorAnimator = new ValueAnimator();
-                animator.setInterpolator(AnimationUtils.FAST_OUT_SLOW_IN_INTERPOLATOR);
-                animator.setDuration(duration);
-                animator.setFloatValues(0, 1);
-                animator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-                    @Override
-                    public void onAnimationUpdate(ValueAnimator animator) {
-                        final float fraction = animator.getAnimatedFraction();
-                        setIndicatorPosition(
-                                AnimationUtils.lerp(startLeft, targetLeft, fraction),
-                                AnimationUtils.lerp(startRight, targetRight, fraction));
-                    }
-                });
-                animator.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animator) {
-                        mSelectedPosition = position;
-                        mSelectionOffset = 0f;
+            if (startLeft == targetLeft && startRight == targetRight) {
+                return false;
+            }
+            mAnimationStartLeft = startLeft;
+            mAnimationStartRight = startRight;
+            mAnimationTargetPosition = position;
+            mAnimationFraction = 0f;
+            return true;
+        }
+
+        /**
+         * 指示器在浮层上的时候，直接把状态设成选中position，浮层用属性动画移过去
+         *
+         * @return 是否由浮层处理了
+         */
+        boolean animateIndicatorLayer(int position, int duration) {
+            if (mIndicatorLayer == null || position < 0 || position >= getTabCount()) {
+                return false;
+            }
+            mTabAnimator.cancelIndicator();
+            mSelectedPosition = position;
+            mSelectionOffset = 0f;
+            mIndicatorLeft = getTabLeft(position) + mTabPaddingStart;
+            mIndicatorRight = getTabRight(position) - mTabPaddingEnd;
+            updateIndicatorBounds();
+            mIndicatorDirtyRect.setEmpty();
+            updateIndicatorLayer(duration, true);
+            return true;
+        }
+
+        /**
+         * 按指示器的区域设置浮层，移动中保持原来的宽度只改scaleX，不重新布局也不重画
+         *
+         * @param settle 不用动画时指示器是否已经停下来，停下来才按真实的宽度布局
+         */
+        private void updateIndicatorLayer(int duration, boolean settle) {
+            final IndicatorLayer layer = mIndicatorLayer;
+            if (mIndicatorRect.isEmpty()) {
+                mIndicatorLayerAnimating = false;
+                layer.animate().cancel();
+                layer.setVisibility(INVISIBLE);
+                return;
+            }
+            layer.setVisibility(VISIBLE);
+            if (layer.getWidth() <= 0 || layer.getTop() != mIndicatorRect.top
+                    || layer.getBottom() != mIndicatorRect.bottom
+                    || (settle && duration <= 0 && layer.getWidth() != mIndicatorRect.width())) {
+                layer.layout(0, mIndicatorRect.top, mIndicatorRect.width(), mIndicatorRect.bottom);
+            }
+            final float scaleX = mIndicatorRect.width() / (float) layer.getWidth();
+            if (duration > 0) {
+                // 动画结束后再按最终的宽度布局
+                mIndicatorLayerAnimating = true;
+                layer.animate()
+                        .translationX(mIndicatorRect.left)
+                        .scaleX(scaleX)
+                        .setDuration(duration)
+                        .setInterpolator(AnimationUtils.FAST_OUT_SLOW_IN_INTERPOLATOR)
+                        .withEndAction(mIndicatorLayerEndAction)
+                        .start();
+            } else {
+                mIndicatorLayerAnimating = false;
+                layer.animate().cancel();
+                layer.setTranslationX(mIndicatorRect.left);
+                layer.setScaleX(scaleX);
+            }
+        }
+
+        void setIndicatorAnimationFraction(float fraction) {
+            mAnimationFraction = fraction;
+            setIndicatorPosition(
+                    AnimationUtils.lerp(mAnimationStartLeft, getTabLeft(mAnimationTargetPosition), fraction),
+                    AnimationUtils.lerp(mAnimationStartRight, getTabRight(mAnimationTargetPosition), fraction));
+        }
+
+        void onIndicatorAnimationEnd() {
+            mSelectedPosition = mAnimationTargetPosition;
+            mSelectionOffset = 0f;
+            mAnimationTargetPosition = -1;
+            // 浮层停下来了，按真实的宽度布局
+            if (updateIndicatorBounds() || mIndicatorLayer != null) {
+                invalidateIndicator();
+            }
+        }
+
+        @Override
+        protected void onDraw(Canvas canvas) {
+            // 不用LinearLayout画分割线，它每次都要遍历所有子View，回收模式下也画不对
+            drawTabDividers(canvas);
+            if (mCanvasMode) {
+                drawTabLabels(canvas);
+            }
+        }
+
+        /**
+         * 直接画文字模式，只画可见范围内的tab文字
+         */
+        private void drawTabLabels(Canvas canvas) {
+            final int count = Math.min(mTabWidths.length, mTabLefts.length - 1);
+            if (mTabWidthsDirty || count <= 0 || mLabelTextSize <= 0
+                    || !canvas.getClipBounds(mClipRect)) {
+                return;
+            }
+            final int top = getPaddingTop() + mTabPaddingTop;
+            final int contentHeight = getHeight() - getPaddingBottom() - mTabPaddingBottom - top;
+            final int first = Math.max(0, findTabIndex(mClipRect.left));
+            final int last = Math.min(count - 1, findTabIndex(mClipRect.right));
+            for (int i = first; i <= last; i++) {
+                final Tab tab = mTabs.get(i);
+                final Layout layout = tab.mLabelLayout;
+                if (layout == null) {
+                    continue;
+                }
+                final boolean selected = tab == mSelectedViewTab;
+                final float fraction = getLabelSelectedFraction(i, selected);
+                final float scale = AnimationUtils.lerp(mTabTextSize, mTabSelectedTextSize, fraction)
+                        / mLabelTextSize;
+                final int contentWidth = mTabWidths[i] - mTabPaddingStart - mTabPaddingEnd;
+                mLabelPaint.setColor(AnimationUtils.lerpColor(mLabelNormalColor, mLabelSelectedColor, fraction));
+                mLabelPaint.setFakeBoldText(selected ? xTabTextSelectedBold : xTabTextBold);
+                final int saveCount = canvas.save();
+                canvas.translate(mTabLefts[i] + mTabPaddingStart + (contentWidth - layout.getWidth()) / 2f,
+                        top + (contentHeight - layout.getHeight()) / 2f);
+                if (scale != 1f) {
+                    canvas.scale(scale, scale, layout.getWidth() / 2f, layout.getHeight() / 2f);
+                }
+                layout.draw(canvas);
+                canvas.restoreToCount(saveCount);
+            }
+        }
+
+        /**
+         * 直接画文字模式没有子View，按tab的位置找到点击的tab
+         * 横向拖动的时候HorizontalScrollView会拦截，这里会收到CANCEL
+         */
+        @Override
+        public boolean onTouchEvent(MotionEvent event) {
+            if (!mCanvasMode) {
+                return super.onTouchEvent(event);
+            }
+            switch (event.getActionMasked()) {
+                case MotionEvent.ACTION_DOWN:
+                    mTouchTabIndex = findTouchTab(event.getX());
+                    return mTouchTabIndex >= 0;
+                case MotionEvent.ACTION_UP:
+                    if (mTouchTabIndex >= 0 && mTouchTabIndex == findTouchTab(event.getX())) {
+                        playSoundEffect(SoundEffectConstants.CLICK);
+                        mTabs.get(mTouchTabIndex).select();
                     }
-                });
-                animator.start();
+                    mTouchTabIndex = -1;
+                    break;
+                case MotionEvent.ACTION_CANCEL:
+                    mTouchTabIndex = -1;
+                    break;
+                default:
+                    break;
+            }
+            return true;
+        }
+
+        /**
+         * @return x所在的tab，在分割线上或者没有tab时返回-1
+         */
+        private int findTouchTab(float x) {
+            if (mTabWidthsDirty) {
+                return -1;
+            }
+            final int position = findTabIndex((int) x);
+            if (position < 0 || position >= mTabs.size()
+                    || x >= mTabLefts[position] + mTabWidths[position]) {
+                return -1;
+            }
+            return position;
+        }
+
+        /**
+         * 按每个tab的位置画分割线，只画在可见范围内的
+         */
+        private void drawTabDividers(Canvas canvas) {
+            final Drawable divider = getDividerDrawable();
+            final int dividerWidth = getTabDividerWidth();
+            if (divider == null || dividerWidth <= 0
+                    || (mRecycle ? mTabWidthsDirty : mTabEdgesDirty)) {
+                // 还没布局完
+                return;
+            }
+            final int count = Math.min(mTabWidths.length, mTabLefts.length - 1);
+            if (count < 2) {
+                return;
+            }
+            if (!canvas.getClipBounds(mClipRect)) {
+                return;
+            }
+            final int top = getPaddingTop() + getDividerPadding();
+            final int bottom = getHeight() - getPaddingBottom() - getDividerPadding();
+            // 从左往右排的时候可以直接找到可见的tab
+            final boolean ordered = mTabLefts[count - 1] >= mTabLefts[0];
+            final int first = ordered ? Math.max(1, findTabIndex(mClipRect.left)) : 1;
+            final int last = ordered ? Math.min(count - 1, findTabIndex(mClipRect.right) + 1) : count - 1;
+            for (int i = first; i <= last; i++) {
+                final int left = mTabLefts[i] >= mTabLefts[i - 1]
+                        ? mTabLefts[i] - dividerWidth
+                        : mTabLefts[i] + mTabWidths[i];
+                if (left >= mClipRect.right || left + dividerWidth <= mClipRect.left) {
+                    continue;
+                }
+                divider.setBounds(left, top, left + dividerWidth, bottom);
+                divider.draw(canvas);
             }
         }
 
@@ -2276,35 +4278,42 @@ public class XTabLayout extends HorizontalScrollView {
             super.draw(canvas);
 
             // Thick colored underline below the current selection
-            if (mIndicatorLeft >= 0 && mIndicatorRight > mIndicatorLeft) {
-
-               /* int maxWidth = mIndicatorRight - mIndicatorLeft;
-                if (maxWidth > mSelectedIndicatorWidth) {
-                    mIndicatorLeft += (maxWidth - mSelectedIndicatorWidth) / 2;
-                    mIndicatorRight -= (maxWidth - mSelectedIndicatorWidth) / 2;
-                }*/
-                if (mSelectedIndicatorWidth != 0) {
-                    int maxWidth = mIndicatorRight - mIndicatorLeft;
-                    if (maxWidth > mSelectedIndicatorWidth) {
-                        mIndicatorLeft += (maxWidth - mSelectedIndicatorWidth) / 2;
-                        mIndicatorRight -= (maxWidth - mSelectedIndicatorWidth) / 2;
-                    }
+            if (mIndicatorLayer == null && !mIndicatorRect.isEmpty()) {
+                if (mIndicatorRenderer != null) {
+                    mIndicatorRenderer.draw(canvas, mIndicatorRect, mIndicatorStartLeft, mIndicatorStartRight,
+                            mIndicatorEndLeft, mIndicatorEndRight, mIndicatorProgress, mSelectedIndicatorPaint);
+                } else if (mSelectedIndicatorDrawable != null) {
+                    mSelectedIndicatorDrawable.draw(canvas);
                 } else {
-                    int maxWidth = mIndicatorRight - mIndicatorLeft;
-                    if (maxWidth > mSelectedTab.getTextWidth()) {
-                        mIndicatorLeft += (maxWidth - mSelectedTab.getTextWidth()) / 2;
-                        mIndicatorRight -= (maxWidth - mSelectedTab.getTextWidth()) / 2;
-                    }
+                    canvas.drawRect(mIndicatorRect, mSelectedIndicatorPaint);
                 }
-                if (mSelectedIndicatorDrawable != null) {
-                    mSelectedIndicatorDrawable.setBounds(0, 0, mIndicatorRight - mIndicatorLeft, mSelectedIndicatorHeight);
-                    canvas.save();
-                    canvas.translate(mIndicatorLeft, getHeight() - mSelectedIndicatorHeight);
+            }
+        }
+
+        /**
+         * 浮层上的指示器，按自己的大小画，位置和宽度由translationX和scaleX决定
+         */
+        private class IndicatorLayer extends View {
+            private final Rect mBounds = new Rect();
+
+            IndicatorLayer(Context context) {
+                super(context);
+                setPivotX(0);
+            }
+
+            @Override
+            protected void onDraw(Canvas canvas) {
+                if (mIndicatorRenderer != null) {
+                    // 浮层只会整体移动和缩放，按静止的样子画
+                    mBounds.set(0, 0, getWidth(), getHeight());
+                    mIndicatorRenderer.draw(canvas, mBounds, 0, getWidth(), 0, getWidth(), 0f,
+                            mSelectedIndicatorPaint);
+                } else if (mSelectedIndicatorDrawable != null) {
+                    mSelectedIndicatorDrawable.setBounds(0, 0, getWidth(), getHeight());
                     mSelectedIndicatorDrawable.draw(canvas);
-                    canvas.restore();
+                    mSelectedIndicatorDrawable.setBounds(mIndicatorRect);
                 } else {
-                    canvas.drawRect(mIndicatorLeft, getHeight() - mSelectedIndicatorHeight,
-                            mIndicatorRight, getHeight(), mSelectedIndicatorPaint);
+                    canvas.drawRect(0, 0, getWidth(), getHeight(), mSelectedIndicatorPaint);
                 }
             }
         }
@@ -2328,33 +4337,21 @@ public class XTabLayout extends HorizontalScrollView {
     }
 
     private int getDefaultHeight() {
-        boolean hasIconAndText = false;
-        for (int i = 0, count = mTabs.size(); i < count; i++) {
-            Tab tab = mTabs.get(i);
-            if (tab != null && tab.getIcon() != null && !TextUtils.isEmpty(tab.getText())) {
-                hasIconAndText = true;
-                break;
-            }
-        }
-        return hasIconAndText ? DEFAULT_HEIGHT_WITH_TEXT_ICON : DEFAULT_HEIGHT;
+        return mIconAndTextTabCount > 0 ? DEFAULT_HEIGHT_WITH_TEXT_ICON : DEFAULT_HEIGHT;
     }
 
     private int getTabMinWidth() {
         if (mPagerAdapter != null && xTabDisplayNum != 0) {
-            WindowManager wm = (WindowManager) getContext()
-                    .getSystemService(Context.WINDOW_SERVICE);
             if (mPagerAdapter.getCount() == 1 || xTabDisplayNum == 1) {
-                return wm.getDefaultDisplay().getWidth();
+                return getDisplayNumWidth();
             } else if (mPagerAdapter.getCount() < xTabDisplayNum) {
-                return wm.getDefaultDisplay().getWidth() / mPagerAdapter.getCount();
+                return getDisplayNumWidth() / mPagerAdapter.getCount();
             } else {
-                return wm.getDefaultDisplay().getWidth() / xTabDisplayNum;
+                return getDisplayNumWidth() / xTabDisplayNum;
             }
         }
         if (xTabDisplayNum != 0) {
-            WindowManager wm = (WindowManager) getContext()
-                    .getSystemService(Context.WINDOW_SERVICE);
-            return wm.getDefaultDisplay().getWidth() / xTabDisplayNum;
+            return getDisplayNumWidth() / xTabDisplayNum;
         }
         if (mRequestedTabMinWidth != INVALID_WIDTH) {
             // If we have been given a min width, use it
@@ -2392,6 +4389,20 @@ public class XTabLayout extends HorizontalScrollView {
         private final WeakReference<XTabLayout> mTabLayoutRef;
         private int mPreviousScrollState;
         private int mScrollState;
+        /**
+         * 一帧内可能收到多次onPageScrolled，只记下最后一次，下一帧统一更新
+         */
+        private boolean mScrollPending;
+        private int mPendingPosition;
+        private float mPendingPositionOffset;
+        private boolean mPendingUpdateText;
+        private boolean mPendingUpdateIndicator;
+        private final Runnable mScrollRunnable = new Runnable() {
+            @Override
+            public void run() {
+                dispatchPendingScroll();
+            }
+        };
 
         public TabLayoutOnPageChangeListener(XTabLayout tabLayout) {
             mTabLayoutRef = new WeakReference<>(tabLayout);
@@ -2399,8 +4410,14 @@ public class XTabLayout extends HorizontalScrollView {
 
         @Override
         public void onPageScrollStateChanged(int state) {
+            // 先用之前的状态把还没更新的滚动位置更新掉
+            flushPendingScroll();
             mPreviousScrollState = mScrollState;
             mScrollState = state;
+            final XTabLayout tabLayout = mTabLayoutRef.get();
+            if (tabLayout != null) {
+                tabLayout.mTabStrip.setIndicatorScrolling(state != SCROLL_STATE_IDLE);
+            }
         }
 
         @Override
@@ -2417,12 +4434,45 @@ public class XTabLayout extends HorizontalScrollView {
                 // onPageSelected() instead.
                 final boolean updateIndicator = !(mScrollState == SCROLL_STATE_SETTLING
                         && mPreviousScrollState == SCROLL_STATE_IDLE);
-                tabLayout.setScrollPosition(position, positionOffset, updateText, updateIndicator);
+                mPendingPosition = position;
+                mPendingPositionOffset = positionOffset;
+                mPendingUpdateText = updateText;
+                mPendingUpdateIndicator = updateIndicator;
+                if (!mScrollPending) {
+                    mScrollPending = true;
+                    ViewCompat.postOnAnimation(tabLayout, mScrollRunnable);
+                }
+            }
+        }
+
+        /**
+         * 每帧只更新一次滚动位置
+         */
+        private void dispatchPendingScroll() {
+            mScrollPending = false;
+            final XTabLayout tabLayout = mTabLayoutRef.get();
+            if (tabLayout != null) {
+                tabLayout.setScrollPosition(mPendingPosition, mPendingPositionOffset,
+                        mPendingUpdateText, mPendingUpdateIndicator);
+            }
+        }
+
+        /**
+         * 还有没更新的滚动位置就马上更新，保证和选中回调的顺序不变
+         */
+        private void flushPendingScroll() {
+            if (mScrollPending) {
+                final XTabLayout tabLayout = mTabLayoutRef.get();
+                if (tabLayout != null) {
+                    tabLayout.removeCallbacks(mScrollRunnable);
+                }
+                dispatchPendingScroll();
             }
         }
 
         @Override
         public void onPageSelected(int position) {
+            flushPendingScroll();
             final XTabLayout tabLayout = mTabLayoutRef.get();
             if (tabLayout != null && tabLayout.getSelectedTabPosition() != position) {
                 // Select the tab, only updating the indicator if we're not being dragged/settled
@@ -2435,6 +4485,17 @@ public class XTabLayout extends HorizontalScrollView {
         }
 
         private void reset() {
+            if (mScrollPending) {
+                mScrollPending = false;
+                final XTabLayout tabLayout = mTabLayoutRef.get();
+                if (tabLayout != null) {
+                    tabLayout.removeCallbacks(mScrollRunnable);
+                }
+            }
+            final XTabLayout tabLayout = mTabLayoutRef.get();
+            if (tabLayout != null) {
+                tabLayout.mTabStrip.setIndicatorScrolling(false);
+            }
             mPreviousScrollState = mScrollState = SCROLL_STATE_IDLE;
         }
     }
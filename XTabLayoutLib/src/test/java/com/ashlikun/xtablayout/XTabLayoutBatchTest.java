@@ -0,0 +1,74 @@
+package com.ashlikun.xtablayout;
+
+import android.view.ContextThemeWrapper;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author　　: 李坤
+ * 创建时间: 2026/10/17 16:10
+ * 邮箱　　：496546144@qq.com
+ * <p>
+ * 功能介绍：批量修改时tab还没重新编号，改文字也要重新测量这个tab自己的宽度
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class XTabLayoutBatchTest {
+    private static final String LONG_TEXT = "a tab label that is much longer than the minimum tab width, "
+            + "so its measured width has to come from the text itself";
+
+    private XTabLayout mTabLayout;
+
+    @Before
+    public void setUp() {
+        mTabLayout = new XTabLayout(new ContextThemeWrapper(RuntimeEnvironment.application,
+                R.style.Theme_AppCompat_Light));
+        mTabLayout.setTabMode(XTabLayout.MODE_SCROLLABLE);
+    }
+
+    @Test
+    public void recycleModeRemeasuresTabEditedAfterLowerInsert() {
+        mTabLayout.setTabRecycle(true);
+        editTextAfterLowerInsert();
+    }
+
+    @Test
+    public void canvasModeRemeasuresTabEditedAfterLowerInsert() {
+        mTabLayout.setTabCanvasMode(true);
+        editTextAfterLowerInsert();
+    }
+
+    private void editTextAfterLowerInsert() {
+        mTabLayout.addTab(mTabLayout.newTab().setText("a"));
+        mTabLayout.addTab(mTabLayout.newTab().setText("b"));
+        mTabLayout.addTab(mTabLayout.newTab().setText("c"));
+        layout();
+        final XTabLayout.Tab tab = mTabLayout.getTabAt(2);
+        final int shortWidth = mTabLayout.getTabWidth(2);
+
+        mTabLayout.beginBatch();
+        mTabLayout.addTab(mTabLayout.newTab().setText("x"), 0);
+        tab.setText(LONG_TEXT);
+        mTabLayout.commitBatch();
+        layout();
+
+        assertEquals(3, tab.getPosition());
+        assertEquals(shortWidth, mTabLayout.getTabWidth(2));
+        assertTrue(mTabLayout.getTabWidth(3) > shortWidth);
+    }
+
+    private void layout() {
+        mTabLayout.measure(View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(144, View.MeasureSpec.EXACTLY));
+        mTabLayout.layout(0, 0, 1080, 144);
+    }
+}